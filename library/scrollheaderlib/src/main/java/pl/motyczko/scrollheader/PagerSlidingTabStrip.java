@@ -22,10 +22,12 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Paint.Style;
-import android.graphics.PorterDuff;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
@@ -36,8 +38,6 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
-import android.text.Spannable;
-import android.text.SpannableString;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -45,9 +45,9 @@ import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver.OnGlobalLayoutListener;
-import android.view.animation.AccelerateInterpolator;
 import android.view.animation.AnimationUtils;
 import android.view.animation.Interpolator;
 import android.widget.HorizontalScrollView;
@@ -62,12 +62,17 @@ import com.nineoldandroids.animation.ValueAnimator;
 import java.util.Locale;
 
 import pl.motyczko.scrollheader.drawables.BlurDrawable;
+import pl.motyczko.scrollheader.drawables.BlurredKenBurnsDrawable;
 import pl.motyczko.scrollheader.drawables.CircleFramedDrawable;
+import pl.motyczko.scrollheader.drawables.CircleShaderDrawable;
 import pl.motyczko.scrollheader.drawables.KenBurnsDrawable;
-import pl.motyczko.scrollheader.helpers.AlphaForegroundColorSpan;
-import pl.motyczko.scrollheader.helpers.ArgbEvaluator;
+import pl.motyczko.scrollheader.drawables.TiledDrawable;
+import pl.motyczko.scrollheader.helpers.ActionBarTitleFader;
+import pl.motyczko.scrollheader.helpers.HeaderState;
 import pl.motyczko.scrollheader.helpers.PageScrollHelper;
+import pl.motyczko.scrollheader.helpers.PowerSaveMonitor;
 import pl.motyczko.scrollheader.helpers.PageScrollListener;
+import pl.motyczko.scrollheader.helpers.SlideSource;
 
 /**
  * TODO: extend from ScrollHeader and add tabs as container view
@@ -77,6 +82,15 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
     private int mIconTopOffset = 0;
 
     private Matrix mDrawMatrix;
+    private final Matrix mInverseDrawMatrix = new Matrix();
+    private final RectF mVisibleRect = new RectF();
+    private final Rect mVisibleRegion = new Rect();
+    private final Rect mGlobalVisibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override public void onScrollChanged() {
+            updateBackgroundVisibility();
+        }
+    };
 
     private class Coordinate {
         public float y = 0.0f;
@@ -152,10 +166,17 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
     private int mFrameShadowColor = 0x80000000;
     private float mShadowRadius = 6;
     private int mHighlightColor = 0xffffffff;
+    private boolean mShaderIcon = false;
+    private boolean mContinuousBlur = false;
+    /**
+     * Blur budget passed to background drawable in milliseconds, 0 keeps its default
+     */
+    private float mBlurFrameBudget;
+    private float mBackgroundFrameRate;
     private boolean mKenBurnsEffect = false;
     private Drawable mViewBackground;
     private ActionBar mActionBar;
-    private Interpolator mActionBarTitleInterpolator;
+    private ActionBarTitleFader mTitleFader;
 
     private final PageListener mPageScrollListener = new PageListener();
 
@@ -165,13 +186,11 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
     private Drawable mIcon;
     private int mIconSize = 80;
     private int mActionBarIconSize = 48;
-    private SpannableString mSpannableString;
-    private AlphaForegroundColorSpan mAlphaForegroundColorSpan;
 
     private int mOverlayColorExpanded = 0x00000000;
     private int mOverlayColorCollapsed = 0x00000000;
 
-    private ArgbEvaluator mColorEvaluator = new ArgbEvaluator();
+    private final HeaderState mHeaderState = new HeaderState();
 
     public PagerSlidingTabStrip(Context context) {
         this(context, null);
@@ -241,6 +260,8 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
         mFrameShadowColor = a.getColor(R.styleable.PagerSlidingTabStrip_frameShadowColor, mFrameShadowColor);
         mShadowRadius = a.getDimension(R.styleable.PagerSlidingTabStrip_shadowRadius, mShadowRadius);
         mHighlightColor = a.getColor(R.styleable.PagerSlidingTabStrip_highlightColor, mHighlightColor);
+        mShaderIcon = a.getBoolean(R.styleable.PagerSlidingTabStrip_shaderIcon, mShaderIcon);
+        mContinuousBlur = a.getBoolean(R.styleable.PagerSlidingTabStrip_continuousBlur, mContinuousBlur);
         mOverlayColorCollapsed = a.getColor(R.styleable.PagerSlidingTabStrip_overlayColorCollapsed, mOverlayColorCollapsed);
         mOverlayColorExpanded = a.getColor(R.styleable.PagerSlidingTabStrip_overlayColorExpanded, mOverlayColorExpanded);
 
@@ -279,6 +300,8 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+        PowerSaveMonitor.install(getContext());
 
         getParent().requestDisallowInterceptTouchEvent(true);
         View parent = (View) getParent();
@@ -289,8 +312,38 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
         if (mViewBackground instanceof KenBurnsDrawable)
-            ((KenBurnsDrawable) mViewBackground).stopAnimation();
+            mViewBackground.setVisible(false, false);
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateBackgroundVisibility();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateBackgroundVisibility();
+    }
+
+    /**
+     * Pauses Ken Burns animation while nobody can see it: window is hidden, header is off-screen
+     * (eg. on other view pager page) or fully collapsed under opaque overlay. Animation resumes
+     * from the same position.
+     */
+    private void updateBackgroundVisibility() {
+        if (!(mViewBackground instanceof KenBurnsDrawable))
+            return;
+
+        updateHeaderState();
+        final float fraction = mHeaderState.getFraction();
+        final boolean visible = getWindowVisibility() == VISIBLE && isShown()
+                && getGlobalVisibleRect(mGlobalVisibleRect)
+                && (fraction < 1.f || Color.alpha(mOverlayColorCollapsed) < 0xff);
+        mViewBackground.setVisible(visible, false);
     }
 
     @Override
@@ -318,12 +371,40 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        drawBackground(canvas);
+        updateHeaderState();
         updateActionBar();
+        if (!mHeaderState.isVisible())
+            return;
+
+        final int saveCount = clipToVisibleRect(canvas);
+        drawBackground(canvas);
         drawIcon(canvas);
+        canvas.restoreToCount(saveCount);
         drawTabs(canvas);
     }
 
+    /**
+     * Clips canvas to part of header which is not moved off-screen by translation.
+     *
+     * @return save count to restore
+     */
+    private int clipToVisibleRect(Canvas canvas) {
+        final int saveCount = canvas.save();
+        canvas.clipRect(getScrollX(), getScrollY() + mHeaderState.getVisibleTop(),
+                getScrollX() + getWidth(), getScrollY() + getHeight());
+        return saveCount;
+    }
+
+    /**
+     * Recomputes collapse fraction and values derived from it, if translation or size changed
+     * since last frame.
+     */
+    private void updateHeaderState() {
+        mHeaderState.setOverlayColors(mOverlayColorExpanded, mOverlayColorCollapsed);
+        mHeaderState.setIconGeometry(mIconSize, mActionBarIconSize, mIconTopOffset);
+        mHeaderState.update(getTranslationY(), getAllowedVerticalScrollLength(), getWidth(), getHeight());
+    }
+
     public void setViewPager(ViewPager pager) {
         this.pager = pager;
         mPageScrollHelper = new PageScrollHelper(pager, this);
@@ -624,7 +705,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
 
     protected boolean verifyDrawable(Drawable who) {
-        return who == mViewBackground;
+        return who == mViewBackground || who == mIcon;
     }
 
     private void calculateBackgroundBounds() {
@@ -661,6 +742,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
             mViewBackground.setBounds(0, 0, getWidth(), getHeight());
             ((KenBurnsDrawable) mViewBackground).animate();
             mKenBurnsInitialized = true;
+            updateBackgroundVisibility();
         }
         if (mDrawMatrix == null && !(mViewBackground instanceof KenBurnsDrawable)) {
             calculateBackgroundBounds();
@@ -670,56 +752,46 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
         float translation = mParallaxForBackground ? getTranslationY() / 2 : 0;
         canvas.translate(getScrollX(), getScrollY() - translation);
         if (mDrawMatrix != null) canvas.concat(mDrawMatrix);
+        if (mViewBackground instanceof BlurDrawable || mViewBackground instanceof TiledDrawable)
+            updateVisibleRegion(translation);
 
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        int color = (Integer) mColorEvaluator.evaluate(fraction, mOverlayColorExpanded, mOverlayColorCollapsed);
-        mViewBackground.setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
         mViewBackground.draw(canvas);
         canvas.restoreToCount(saveCount);
+        canvas.drawColor(mHeaderState.getOverlayColor());
+    }
+
+    /**
+     * Passes part of background which is visible on screen to blur or tiled drawable, so only this
+     * part is blurred, decoded and drawn.
+     */
+    private void updateVisibleRegion(float translation) {
+        if (mDrawMatrix == null || !mDrawMatrix.invert(mInverseDrawMatrix))
+            return;
+        mVisibleRect.set(0, Math.abs(getTranslationY()) + translation, getWidth(), getHeight() + translation);
+        mInverseDrawMatrix.mapRect(mVisibleRect);
+        mVisibleRect.roundOut(mVisibleRegion);
+        if (mViewBackground instanceof TiledDrawable)
+            ((TiledDrawable) mViewBackground).setViewport(mVisibleRegion, mDrawMatrix.mapRadius(1.f));
+        else
+            ((BlurDrawable) mViewBackground).setVisibleRegion(mVisibleRegion);
     }
 
     private void drawIcon(Canvas canvas) {
         if (mIcon == null)
             return;
         canvas.save();
-        float translationX = calculateIconTranslationX();
-        float translationY = calculateIconTranslationY();
-        canvas.translate(translationX, translationY);
-        float scale = calculateIconScale();
+        canvas.translate(getScrollX() + mHeaderState.getIconTranslationX(), mHeaderState.getIconTranslationY());
+        float scale = mHeaderState.getIconScale();
         canvas.scale(scale, scale);
-        mIcon.draw(canvas);
+        final Rect bounds = mIcon.getBounds();
+        if (!canvas.quickReject(bounds.left, bounds.top, bounds.right, bounds.bottom, Canvas.EdgeType.AA))
+            mIcon.draw(canvas);
         canvas.restore();
     }
 
     private void updateActionBar() {
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        if (mSpannableString == null)
-            mSpannableString = new SpannableString(mActionBar.getTitle());
-        mAlphaForegroundColorSpan.setAlpha(mActionBarTitleInterpolator.getInterpolation(fraction));
-        mSpannableString.setSpan(mAlphaForegroundColorSpan, 0, mSpannableString.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        mActionBar.setTitle(mSpannableString);
-    }
-
-    private float calculateIconTranslationX() {
-        int width = getWidth();
-
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-
-        return getScrollX() + (1 - fraction) * (width / 2 - mIconSize / 2);
-    }
-
-    private float calculateIconTranslationY() {
-        int height = getHeight();
-        float iconScale = calculateIconScale();
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        return fraction * mIconTopOffset + (1 - fraction) * (height / 2 - mIconSize * iconScale / 2) - getTranslationY();
-    }
-
-    private float calculateIconScale() {
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        float minSize = (float) mActionBarIconSize / (float) mIconSize;
-        float scale = 1 - (1 - minSize) * fraction;
-        return scale;
+        if (mTitleFader != null)
+            mTitleFader.setFraction(mHeaderState.getFraction());
     }
 
     public void setActionBar(ActionBar actionBar) {
@@ -727,13 +799,13 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
             return;
 
         mActionBar = actionBar;
+        mTitleFader = null;
         if (mActionBar == null)
             return;
 
         mActionBar.setIcon(R.drawable.transparent_actionbar_icon);
         mActionBar.setLogo(R.drawable.transparent_actionbar_icon);
-        mAlphaForegroundColorSpan = new AlphaForegroundColorSpan(0xffffffff);
-        mActionBarTitleInterpolator = new AccelerateInterpolator();
+        mTitleFader = new ActionBarTitleFader(mActionBar);
     }
 
     public void setMinHeight(int minHeight) {
@@ -785,6 +857,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
             return;
         if (duration == 0) {
             setTranslationY(storedYCoordinate);
+            updateBackgroundVisibility();
             invalidate();
             return;
         }
@@ -812,6 +885,8 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
         storeYCoordinate(tabIndex, y);
         if (mBlurBackground && mViewBackground instanceof BlurDrawable)
             ((BlurDrawable) mViewBackground).blur(Math.abs(y / getAllowedVerticalScrollLength()));
+        else if (mBlurBackground && mViewBackground instanceof BlurredKenBurnsDrawable)
+            ((BlurredKenBurnsDrawable) mViewBackground).blur(Math.abs(y / getAllowedVerticalScrollLength()));
         restoreYCoordinate(0, tabIndex);
     }
 
@@ -869,6 +944,7 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
         @Override public void onAnimationEnd(Animator animation) {
             mIsAnimating = false;
+            updateBackgroundVisibility();
         }
 
         @Override public void onAnimationCancel(Animator animation) {
@@ -961,6 +1037,13 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
         }
 
         @Override public void onScrollStateChanged(int currentPage, int scrollState) {
+            if (!(mViewBackground instanceof BlurDrawable))
+                return;
+
+            if (scrollState == SCROLL_STATE_DRAGGING)
+                ((BlurDrawable) mViewBackground).resetCounters();
+            else if (scrollState == SCROLL_STATE_IDLE)
+                ((BlurDrawable) mViewBackground).refine();
         }
     }
 
@@ -974,18 +1057,21 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
 
     @Override
     public void setBackground (Drawable background) {
+        cancelBackgroundWork();
         mViewBackground = background;
         setupBackground();
     }
 
     @Override
     public void setBackgroundDrawable (Drawable background) {
+        cancelBackgroundWork();
         mViewBackground = background;
         setupBackground();
     }
 
     @Override
     public void setBackgroundResource (int resid) {
+        cancelBackgroundWork();
         mViewBackground = getResources().getDrawable(resid);
         setupBackground();
     }
@@ -995,14 +1081,59 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
         setBackground(drawable);
     }
 
+    /**
+     * Sets Ken Burns background streamed from given slide source. Only current and next slide are
+     * kept in memory, decoded at size matching the header.
+     */
+    public void setBackgroundSlides(SlideSource source) {
+        cancelBackgroundWork();
+        mViewBackground = mBlurBackground ? new BlurredKenBurnsDrawable(source) : new KenBurnsDrawable(source);
+        mViewBackground.setCallback(this);
+        applyBackgroundSettings();
+        invalidate();
+    }
+
+    /**
+     * Cancels blurring of previous background, so fast background swaps don't waste time on
+     * blurring bitmaps which will never be drawn. Stops its Ken Burns animation, which would
+     * otherwise keep running on shared frame clock, and releases decoder and tiles of tiled image.
+     */
+    private void cancelBackgroundWork() {
+        if (mViewBackground instanceof BlurDrawable)
+            ((BlurDrawable) mViewBackground).cancel();
+        if (mViewBackground instanceof KenBurnsDrawable)
+            ((KenBurnsDrawable) mViewBackground).release();
+        if (mViewBackground instanceof TiledDrawable)
+            ((TiledDrawable) mViewBackground).release();
+        mKenBurnsInitialized = false;
+    }
+
     private void setupBackground() {
+        wrapBackground();
+        if (mViewBackground == null)
+            return;
+        mViewBackground.setCallback(this);
+        applyBackgroundSettings();
+    }
+
+    /**
+     * Wraps background in blur and Ken Burns drawables according to enabled effects.
+     */
+    private void wrapBackground() {
+        if (mBlurBackground && mKenBurnsEffect
+                && (mViewBackground instanceof BitmapDrawable || mViewBackground instanceof LayerDrawable
+                || mViewBackground instanceof TiledDrawable)) {
+            mViewBackground = new BlurredKenBurnsDrawable(mViewBackground);
+            return;
+        }
+
         if (mBlurBackground && mViewBackground instanceof BitmapDrawable) {
             mViewBackground = new BlurDrawable(((BitmapDrawable) mViewBackground).getBitmap(), getContext());
         }
 
-        if (mKenBurnsEffect && (mViewBackground instanceof BitmapDrawable || mViewBackground instanceof LayerDrawable)) {
+        if (mKenBurnsEffect && (mViewBackground instanceof BitmapDrawable || mViewBackground instanceof LayerDrawable
+                || mViewBackground instanceof TiledDrawable)) {
             mViewBackground = new KenBurnsDrawable(mViewBackground);
-            mViewBackground.setCallback(this);
         }
     }
 
@@ -1022,13 +1153,86 @@ public class PagerSlidingTabStrip extends HorizontalScrollView {
         setIcon(drawable);
     }
 
+    /**
+     * Draws icon through {@link CircleShaderDrawable}, which doesn't allocate intermediate bitmap,
+     * instead of {@link CircleFramedDrawable}. Applies to icons set afterwards.
+     */
+    public void setShaderIcon(boolean shaderIcon) {
+        mShaderIcon = shaderIcon;
+    }
+
+    /**
+     * Blurs background with exact radius for current scroll position instead of blending
+     * precomputed levels, see {@link BlurDrawable#setContinuousMode(boolean)}. Has effect only with
+     * blurred background.
+     */
+    public void setContinuousBlur(boolean continuousBlur) {
+        mContinuousBlur = continuousBlur;
+        if (mViewBackground instanceof BlurDrawable)
+            ((BlurDrawable) mViewBackground).setContinuousMode(continuousBlur);
+    }
+
+    /**
+     * Sets how much time blurring of background may take in one frame. Applies to preview blur in
+     * continuous mode and to blurred Ken Burns frames.
+     *
+     * @param budgetMs time in milliseconds
+     */
+    public void setBlurFrameBudget(float budgetMs) {
+        mBlurFrameBudget = budgetMs;
+        applyBackgroundSettings();
+    }
+
+    /**
+     * Limits frame rate of Ken Burns background.
+     *
+     * @param framesPerSecond maximum frame rate, 0 for display refresh rate
+     */
+    public void setBackgroundFrameRate(float framesPerSecond) {
+        mBackgroundFrameRate = framesPerSecond;
+        applyBackgroundSettings();
+    }
+
+    /**
+     * Returns drawable which is drawn as header background, eg. {@link BlurDrawable} or
+     * {@link KenBurnsDrawable} created for background set on this view, so its statistics can be
+     * read and it can be configured further.
+     */
+    public Drawable getHeaderBackground() {
+        return mViewBackground;
+    }
+
+    /**
+     * Passes blur and frame rate settings of this view to background drawable.
+     */
+    private void applyBackgroundSettings() {
+        if (mViewBackground instanceof BlurDrawable) {
+            final BlurDrawable blurDrawable = (BlurDrawable) mViewBackground;
+            if (mContinuousBlur)
+                blurDrawable.setContinuousMode(true);
+            if (mBlurFrameBudget > 0)
+                blurDrawable.setPreviewFrameBudget(mBlurFrameBudget);
+        }
+        if (mViewBackground instanceof BlurredKenBurnsDrawable && mBlurFrameBudget > 0)
+            ((BlurredKenBurnsDrawable) mViewBackground).setFrameBudget(mBlurFrameBudget);
+        if (mViewBackground instanceof KenBurnsDrawable)
+            ((KenBurnsDrawable) mViewBackground).setTargetFrameRate(mBackgroundFrameRate);
+    }
+
     private void setupIcon() {
         if (!(mIcon instanceof BitmapDrawable))
             return;
 
-        mIcon = new CircleFramedDrawable(((BitmapDrawable) mIcon).getBitmap(), mIconSize,
-                mFrameColor, mStrokeWidth, mFrameShadowColor, mShadowRadius,
-                mHighlightColor);
+        final Bitmap bitmap = ((BitmapDrawable) mIcon).getBitmap();
+        if (mShaderIcon)
+            mIcon = new CircleShaderDrawable(bitmap, mIconSize, mFrameColor, mStrokeWidth,
+                    mFrameShadowColor, mShadowRadius, mHighlightColor);
+        else
+            mIcon = new CircleFramedDrawable(bitmap, mIconSize,
+                    mFrameColor, mStrokeWidth, mFrameShadowColor, mShadowRadius,
+                    mHighlightColor);
         mIcon.setBounds(0, 0, mIconSize, mIconSize);
+        // framed avatar can be rendered in background
+        mIcon.setCallback(this);
     }
 }
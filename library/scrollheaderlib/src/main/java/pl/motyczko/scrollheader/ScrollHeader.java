@@ -21,30 +21,36 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
 import android.os.Build;
-import android.text.Spannable;
-import android.text.SpannableString;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import android.view.Gravity;
 import android.view.View;
-import android.view.animation.AccelerateInterpolator;
-import android.view.animation.Interpolator;
+import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.ListView;
 
 import pl.motyczko.scrollheader.drawables.BlurDrawable;
+import pl.motyczko.scrollheader.drawables.BlurredKenBurnsDrawable;
 import pl.motyczko.scrollheader.drawables.CircleFramedDrawable;
+import pl.motyczko.scrollheader.drawables.CircleShaderDrawable;
 import pl.motyczko.scrollheader.drawables.KenBurnsDrawable;
-import pl.motyczko.scrollheader.helpers.AlphaForegroundColorSpan;
-import pl.motyczko.scrollheader.helpers.ArgbEvaluator;
+import pl.motyczko.scrollheader.drawables.TiledDrawable;
+import pl.motyczko.scrollheader.helpers.ActionBarTitleFader;
+import pl.motyczko.scrollheader.helpers.HeaderState;
 import pl.motyczko.scrollheader.helpers.PageScrollHelper;
+import pl.motyczko.scrollheader.helpers.PowerSaveMonitor;
+import pl.motyczko.scrollheader.helpers.SlideSource;
 import pl.motyczko.scrollheader.helpers.SimplePageScrollListener;
 import pl.motyczko.scrollheader.views.ObservableScrollView;
 
@@ -56,11 +62,42 @@ public class ScrollHeader extends FrameLayout {
     private int mFrameShadowColor = 0x80000000;
     private float mShadowRadius = 6;
     private int mHighlightColor = 0xffffffff;
+    private boolean mShaderIcon = false;
+    private boolean mContinuousBlur = false;
+    /**
+     * Blur budget passed to background drawable in milliseconds, 0 keeps its default
+     */
+    private float mBlurFrameBudget;
+    private float mBackgroundFrameRate;
+    /**
+     * Background, overlay and icon are drawn by child layers which are moved with view properties
+     */
+    private boolean mLayeredDrawing = false;
+    private BackgroundLayer mBackgroundLayer;
+    private View mOverlayLayer;
+    private IconLayer mIconLayer;
+    private int mOverlayLayerColor;
+    /**
+     * Fully collapsed header is drawn from snapshot of its visible strip
+     */
+    private boolean mUseCollapsedSnapshot = true;
+    private Bitmap mCollapsedSnapshot;
+    private Canvas mCollapsedSnapshotCanvas;
+    private boolean mCollapsedSnapshotValid;
     private boolean mKenBurnsEffect = false;
     private Drawable mViewBackground;
     private Matrix mDrawMatrix;
+    private final Matrix mInverseDrawMatrix = new Matrix();
+    private final RectF mVisibleRect = new RectF();
+    private final Rect mVisibleRegion = new Rect();
+    private final Rect mGlobalVisibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override public void onScrollChanged() {
+            updateBackgroundVisibility();
+        }
+    };
     private ActionBar mActionBar;
-    private Interpolator mActionBarTitleInterpolator;
+    private ActionBarTitleFader mTitleFader;
 
     private final PageListener mPageScrollListener = new PageListener();
 
@@ -71,15 +108,13 @@ public class ScrollHeader extends FrameLayout {
     private Drawable mIcon;
     private int mIconSize = 80;
     private int mActionBarIconSize = 48;
-    private SpannableString mSpannableString;
-    private AlphaForegroundColorSpan mAlphaForegroundColorSpan;
 
     private PageScrollHelper mPageScrollHelper;
 
     private int mOverlayColorExpanded = 0x00000000;
     private int mOverlayColorCollapsed = 0x00000000;
 
-    private ArgbEvaluator mColorEvaluator = new ArgbEvaluator();
+    private final HeaderState mHeaderState = new HeaderState();
 
     /**
      * Minimum allowed height
@@ -126,31 +161,65 @@ public class ScrollHeader extends FrameLayout {
         mFrameShadowColor = a.getColor(R.styleable.ScrollHeader_frameShadowColor, mFrameShadowColor);
         mShadowRadius = a.getDimension(R.styleable.ScrollHeader_shadowRadius, mShadowRadius);
         mHighlightColor = a.getColor(R.styleable.ScrollHeader_highlightColor, mHighlightColor);
+        mShaderIcon = a.getBoolean(R.styleable.ScrollHeader_shaderIcon, mShaderIcon);
+        mContinuousBlur = a.getBoolean(R.styleable.ScrollHeader_continuousBlur, mContinuousBlur);
+        final boolean layeredDrawing = a.getBoolean(R.styleable.ScrollHeader_layeredDrawing, mLayeredDrawing);
+        mUseCollapsedSnapshot = a.getBoolean(R.styleable.ScrollHeader_collapsedSnapshot, mUseCollapsedSnapshot);
         mOverlayColorCollapsed = a.getColor(R.styleable.ScrollHeader_overlayColorCollapsed, mOverlayColorCollapsed);
         mOverlayColorExpanded = a.getColor(R.styleable.ScrollHeader_overlayColorExpanded, mOverlayColorExpanded);
         setupIcon();
 
-        if (mBlurBackground && mKenBurnsEffect) {
-            throw new IllegalStateException("Blur and Ken Burns effect cannot be used together!");
-        }
-
         a.recycle();
         mPageScrollHelper = new PageScrollHelper(this);
         mPageScrollHelper.setPageScrollListener(mPageScrollListener);
         setupBackground();
+        setLayeredDrawing(layeredDrawing);
     }
 
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+        PowerSaveMonitor.install(getContext());
         setupViews();
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
         if (mViewBackground instanceof KenBurnsDrawable)
-            ((KenBurnsDrawable) mViewBackground).stopAnimation();
+            mViewBackground.setVisible(false, false);
+        releaseCollapsedSnapshot();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateBackgroundVisibility();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateBackgroundVisibility();
+    }
+
+    /**
+     * Pauses Ken Burns animation while nobody can see it: window is hidden, header is off-screen
+     * (eg. on other view pager page) or fully collapsed under opaque overlay. Animation resumes
+     * from the same position.
+     */
+    private void updateBackgroundVisibility() {
+        if (!(mViewBackground instanceof KenBurnsDrawable))
+            return;
+
+        updateHeaderState();
+        final float fraction = mHeaderState.getFraction();
+        final boolean visible = getWindowVisibility() == VISIBLE && isShown()
+                && getGlobalVisibleRect(mGlobalVisibleRect)
+                && (fraction < 1.f || Color.alpha(mOverlayColorCollapsed) < 0xff);
+        mViewBackground.setVisible(visible, false);
     }
 
     @Override
@@ -163,20 +232,26 @@ public class ScrollHeader extends FrameLayout {
 
     @Override
     public void setBackground (Drawable background) {
+        cancelBackgroundWork();
         mViewBackground = background;
         setupBackground();
+        invalidateLayers();
     }
 
     @Override
     public void setBackgroundDrawable (Drawable background) {
+        cancelBackgroundWork();
         mViewBackground = background;
         setupBackground();
+        invalidateLayers();
     }
 
     @Override
     public void setBackgroundResource (int resid) {
+        cancelBackgroundWork();
         mViewBackground = getResources().getDrawable(resid);
         setupBackground();
+        invalidateLayers();
     }
 
     @Override
@@ -185,30 +260,169 @@ public class ScrollHeader extends FrameLayout {
         setupViews();
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mCollapsedSnapshotValid = false;
+        updateLayers();
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        drawBackground(canvas);
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        int color = (Integer) mColorEvaluator.evaluate(fraction, mOverlayColorExpanded, mOverlayColorCollapsed);
-        canvas.drawColor(color);
+        if (mLayeredDrawing)
+            return;
+        updateHeaderState();
         updateActionBar();
+        if (!mHeaderState.isVisible())
+            return;
+
+        if (isCollapsedSnapshotUsed()) {
+            drawCollapsedSnapshot(canvas);
+            return;
+        }
+        releaseCollapsedSnapshot();
+        drawContent(canvas);
+    }
+
+    private void drawContent(Canvas canvas) {
+        final int saveCount = clipToVisibleRect(canvas);
+        drawBackground(canvas);
+        canvas.drawColor(mHeaderState.getOverlayColor());
         drawIcon(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private boolean isCollapsedSnapshotUsed() {
+        return mUseCollapsedSnapshot && !mLayeredDrawing && !isBackgroundAnimatedWhenCollapsed()
+                && getAllowedVerticalScrollLength() > 0 && getTranslationY() <= -getAllowedVerticalScrollLength();
+    }
+
+    /**
+     * Returns true if Ken Burns background keeps animating under translucent collapsed overlay,
+     * snapshot would freeze it.
+     */
+    private boolean isBackgroundAnimatedWhenCollapsed() {
+        return mViewBackground instanceof KenBurnsDrawable && ((KenBurnsDrawable) mViewBackground).isAnimating()
+                && Color.alpha(mOverlayColorCollapsed) < 0xff;
+    }
+
+    /**
+     * Draws visible strip of collapsed header from snapshot. Snapshot is rendered on first
+     * collapsed frame and again only after content of header changed.
+     */
+    private void drawCollapsedSnapshot(Canvas canvas) {
+        final int top = mHeaderState.getVisibleTop();
+        final int width = getWidth();
+        final int height = getHeight() - top;
+        if (mCollapsedSnapshot != null
+                && (mCollapsedSnapshot.getWidth() != width || mCollapsedSnapshot.getHeight() != height))
+            releaseCollapsedSnapshot();
+
+        if (mCollapsedSnapshot == null) {
+            mCollapsedSnapshot = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCollapsedSnapshotCanvas = new Canvas(mCollapsedSnapshot);
+            mCollapsedSnapshotValid = false;
+        }
+
+        if (!mCollapsedSnapshotValid) {
+            mCollapsedSnapshot.eraseColor(0);
+            final int saveCount = mCollapsedSnapshotCanvas.save();
+            mCollapsedSnapshotCanvas.translate(-getScrollX(), -getScrollY() - top);
+            drawContent(mCollapsedSnapshotCanvas);
+            mCollapsedSnapshotCanvas.restoreToCount(saveCount);
+            mCollapsedSnapshotValid = true;
+        }
+        canvas.drawBitmap(mCollapsedSnapshot, getScrollX(), getScrollY() + top, null);
+    }
+
+    private void releaseCollapsedSnapshot() {
+        // not recycled, last display list may still draw it
+        mCollapsedSnapshot = null;
+        mCollapsedSnapshotCanvas = null;
+        mCollapsedSnapshotValid = false;
+    }
+
+    /**
+     * Enables drawing of fully collapsed header from cached snapshot of its visible strip, instead
+     * of drawing background, overlay and icon on every frame. Enabled by default. Snapshot is not
+     * used in layered drawing mode and while Ken Burns background stays visible when collapsed.
+     */
+    public void setCollapsedSnapshot(boolean useCollapsedSnapshot) {
+        mUseCollapsedSnapshot = useCollapsedSnapshot;
+        if (!useCollapsedSnapshot)
+            releaseCollapsedSnapshot();
+        invalidate();
+    }
+
+    /**
+     * Clips canvas to part of header which is not moved off-screen by translation.
+     *
+     * @return save count to restore
+     */
+    private int clipToVisibleRect(Canvas canvas) {
+        final int saveCount = canvas.save();
+        canvas.clipRect(getScrollX(), getScrollY() + mHeaderState.getVisibleTop(),
+                getScrollX() + getWidth(), getScrollY() + getHeight());
+        return saveCount;
+    }
+
+    /**
+     * Recomputes collapse fraction and values derived from it, if translation or size changed
+     * since last frame.
+     */
+    private void updateHeaderState() {
+        mHeaderState.setOverlayColors(mOverlayColorExpanded, mOverlayColorCollapsed);
+        mHeaderState.setIconGeometry(mIconSize, mActionBarIconSize, mIconTopOffset);
+        mHeaderState.update(getTranslationY(), getAllowedVerticalScrollLength(), getWidth(), getHeight());
+    }
+
+    /**
+     * Cancels blurring of previous background, so fast background swaps don't waste time on
+     * blurring bitmaps which will never be drawn. Stops its Ken Burns animation, which would
+     * otherwise keep running on shared frame clock, and releases decoder and tiles of tiled image.
+     */
+    private void cancelBackgroundWork() {
+        if (mViewBackground instanceof BlurDrawable)
+            ((BlurDrawable) mViewBackground).cancel();
+        if (mViewBackground instanceof KenBurnsDrawable)
+            ((KenBurnsDrawable) mViewBackground).release();
+        if (mViewBackground instanceof TiledDrawable)
+            ((TiledDrawable) mViewBackground).release();
+        mKenBurnsInitialized = false;
     }
 
     private void setupBackground() {
+        wrapBackground();
+        if (mViewBackground == null)
+            return;
+        mViewBackground.setCallback(this);
+        applyBackgroundSettings();
+    }
+
+    /**
+     * Wraps background in blur and Ken Burns drawables according to enabled effects.
+     */
+    private void wrapBackground() {
+        if (mBlurBackground && mKenBurnsEffect
+                && (mViewBackground instanceof BitmapDrawable || mViewBackground instanceof LayerDrawable
+                || mViewBackground instanceof TiledDrawable)) {
+            mViewBackground = new BlurredKenBurnsDrawable(mViewBackground);
+            return;
+        }
+
         if (mBlurBackground && mViewBackground instanceof BitmapDrawable) {
             mViewBackground = new BlurDrawable(((BitmapDrawable) mViewBackground).getBitmap(), getContext());
         }
 
-        if (mKenBurnsEffect && (mViewBackground instanceof BitmapDrawable || mViewBackground instanceof LayerDrawable)) {
+        if (mKenBurnsEffect && (mViewBackground instanceof BitmapDrawable || mViewBackground instanceof LayerDrawable
+                || mViewBackground instanceof TiledDrawable)) {
             mViewBackground = new KenBurnsDrawable(mViewBackground);
-            mViewBackground.setCallback(this);
         }
     }
 
     protected boolean verifyDrawable(Drawable who) {
-        return who == mViewBackground;
+        return who == mViewBackground || who == mIcon;
     }
 
     private void calculateBackgroundBounds() {
@@ -244,66 +458,59 @@ public class ScrollHeader extends FrameLayout {
             mViewBackground.setBounds(0, 0, getWidth(), getHeight());
             ((KenBurnsDrawable) mViewBackground).animate();
             mKenBurnsInitialized = true;
+            updateBackgroundVisibility();
         }
         if (mDrawMatrix == null && !(mViewBackground instanceof KenBurnsDrawable)) {
             calculateBackgroundBounds();
         }
         int saveCount = canvas.getSaveCount();
         canvas.save();
-        float translation = mParallaxForBackground ? getTranslationY() / 2 : 0;
+        // in layered mode parallax is done by translation of background layer
+        float translation = mParallaxForBackground && !mLayeredDrawing ? getTranslationY() / 2 : 0;
         canvas.translate(getScrollX(), getScrollY() - translation);
         if (mDrawMatrix != null) canvas.concat(mDrawMatrix);
+        if (mViewBackground instanceof BlurDrawable || mViewBackground instanceof TiledDrawable)
+            updateVisibleRegion(translation);
         mViewBackground.draw(canvas);
         canvas.restoreToCount(saveCount);
     }
 
+    /**
+     * Passes part of background which is visible on screen to blur or tiled drawable, so only this
+     * part is blurred, decoded and drawn.
+     */
+    private void updateVisibleRegion(float translation) {
+        if (mDrawMatrix == null || !mDrawMatrix.invert(mInverseDrawMatrix))
+            return;
+        if (mLayeredDrawing)
+            // layer is not redrawn while header scrolls, so it keeps whole header area
+            mVisibleRect.set(0, 0, getWidth(), getHeight());
+        else
+            mVisibleRect.set(0, Math.abs(getTranslationY()) + translation, getWidth(), getHeight() + translation);
+        mInverseDrawMatrix.mapRect(mVisibleRect);
+        mVisibleRect.roundOut(mVisibleRegion);
+        if (mViewBackground instanceof TiledDrawable)
+            ((TiledDrawable) mViewBackground).setViewport(mVisibleRegion, mDrawMatrix.mapRadius(1.f));
+        else
+            ((BlurDrawable) mViewBackground).setVisibleRegion(mVisibleRegion);
+    }
+
     private void drawIcon(Canvas canvas) {
         if (mIcon == null)
             return;
         canvas.save();
-        float translationX = calculateIconTranslationX();
-        float translationY = calculateIconTranslationY();
-        canvas.translate(translationX, translationY);
-        float scale = calculateIconScale();
+        canvas.translate(mHeaderState.getIconTranslationX(), mHeaderState.getIconTranslationY());
+        float scale = mHeaderState.getIconScale();
         canvas.scale(scale, scale);
-        mIcon.draw(canvas);
+        final Rect bounds = mIcon.getBounds();
+        if (!canvas.quickReject(bounds.left, bounds.top, bounds.right, bounds.bottom, Canvas.EdgeType.AA))
+            mIcon.draw(canvas);
         canvas.restore();
     }
 
     private void updateActionBar() {
-        if (mActionBar == null)
-            return;
-
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-
-        if (mSpannableString == null)
-            mSpannableString = new SpannableString(mActionBar.getTitle());
-
-        mAlphaForegroundColorSpan.setAlpha(mActionBarTitleInterpolator.getInterpolation(fraction));
-        mSpannableString.setSpan(mAlphaForegroundColorSpan, 0, mSpannableString.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-        mActionBar.setTitle(mSpannableString);
-    }
-
-    private float calculateIconTranslationX() {
-        int width = getWidth();
-
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-
-        return (1 - fraction) * (width / 2 - mIconSize / 2);
-    }
-
-    private float calculateIconTranslationY() {
-        int height = getHeight();
-        float iconScale = calculateIconScale();
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        return fraction * mIconTopOffset + (1 - fraction) * (height / 2 - mIconSize * iconScale / 2) - getTranslationY();
-    }
-
-    private float calculateIconScale() {
-        float fraction = Math.abs(getTranslationY() / getAllowedVerticalScrollLength());
-        float minSize = (float) mActionBarIconSize / (float) mIconSize;
-        float scale = 1 - (1 - minSize) * fraction;
-        return scale;
+        if (mTitleFader != null)
+            mTitleFader.setFraction(mHeaderState.getFraction());
     }
 
     public void setActionBar(ActionBar actionBar) {
@@ -311,12 +518,12 @@ public class ScrollHeader extends FrameLayout {
             return;
 
         mActionBar = actionBar;
+        mTitleFader = null;
         if (mActionBar == null)
             return;
 
         mActionBar.setIcon(R.drawable.transparent_actionbar_icon);
-        mAlphaForegroundColorSpan = new AlphaForegroundColorSpan(0xffffffff);
-        mActionBarTitleInterpolator = new AccelerateInterpolator();
+        mTitleFader = new ActionBarTitleFader(mActionBar);
     }
 
     public void setMinHeight(int minHeight) {
@@ -360,8 +567,14 @@ public class ScrollHeader extends FrameLayout {
             return;
         if (mBlurBackground && mViewBackground instanceof BlurDrawable)
             ((BlurDrawable) mViewBackground).blur(Math.abs(y / getAllowedVerticalScrollLength()));
+        else if (mBlurBackground && mViewBackground instanceof BlurredKenBurnsDrawable)
+            ((BlurredKenBurnsDrawable) mViewBackground).blur(Math.abs(y / getAllowedVerticalScrollLength()));
         setTranslationY(y);
-        invalidate();
+        updateBackgroundVisibility();
+        if (mLayeredDrawing)
+            updateLayers();
+        else
+            invalidate();
     }
 
     /**
@@ -377,6 +590,19 @@ public class ScrollHeader extends FrameLayout {
         setBackground(drawable);
     }
 
+    /**
+     * Sets Ken Burns background streamed from given slide source. Only current and next slide are
+     * kept in memory, decoded at size matching the header.
+     */
+    public void setBackgroundSlides(SlideSource source) {
+        cancelBackgroundWork();
+        mViewBackground = mBlurBackground ? new BlurredKenBurnsDrawable(source) : new KenBurnsDrawable(source);
+        mViewBackground.setCallback(this);
+        applyBackgroundSettings();
+        invalidate();
+        invalidateLayers();
+    }
+
     public void setIcon(Bitmap bitmap) {
         BitmapDrawable drawable = new BitmapDrawable(getResources(), bitmap);
         setIcon(drawable);
@@ -386,6 +612,7 @@ public class ScrollHeader extends FrameLayout {
         mIcon = drawable;
         setupIcon();
         invalidate();
+        invalidateLayers();
     }
 
     public void setIcon(int resId) {
@@ -393,14 +620,195 @@ public class ScrollHeader extends FrameLayout {
         setIcon(drawable);
     }
 
+    /**
+     * Draws icon through {@link CircleShaderDrawable}, which doesn't allocate intermediate bitmap,
+     * instead of {@link CircleFramedDrawable}. Applies to icons set afterwards.
+     */
+    public void setShaderIcon(boolean shaderIcon) {
+        mShaderIcon = shaderIcon;
+    }
+
+    /**
+     * Blurs background with exact radius for current scroll position instead of blending
+     * precomputed levels, see {@link BlurDrawable#setContinuousMode(boolean)}. Has effect only with
+     * blurred background.
+     */
+    public void setContinuousBlur(boolean continuousBlur) {
+        mContinuousBlur = continuousBlur;
+        if (mViewBackground instanceof BlurDrawable)
+            ((BlurDrawable) mViewBackground).setContinuousMode(continuousBlur);
+    }
+
+    /**
+     * Sets how much time blurring of background may take in one frame. Applies to preview blur in
+     * continuous mode and to blurred Ken Burns frames.
+     *
+     * @param budgetMs time in milliseconds
+     */
+    public void setBlurFrameBudget(float budgetMs) {
+        mBlurFrameBudget = budgetMs;
+        applyBackgroundSettings();
+    }
+
+    /**
+     * Limits frame rate of Ken Burns background.
+     *
+     * @param framesPerSecond maximum frame rate, 0 for display refresh rate
+     */
+    public void setBackgroundFrameRate(float framesPerSecond) {
+        mBackgroundFrameRate = framesPerSecond;
+        applyBackgroundSettings();
+    }
+
+    /**
+     * Returns drawable which is drawn as header background, eg. {@link BlurDrawable} or
+     * {@link KenBurnsDrawable} created for background set on this view, so its statistics can be
+     * read and it can be configured further.
+     */
+    public Drawable getHeaderBackground() {
+        return mViewBackground;
+    }
+
+    /**
+     * Passes blur and frame rate settings of this view to background drawable.
+     */
+    private void applyBackgroundSettings() {
+        if (mViewBackground instanceof BlurDrawable) {
+            final BlurDrawable blurDrawable = (BlurDrawable) mViewBackground;
+            if (mContinuousBlur)
+                blurDrawable.setContinuousMode(true);
+            if (mBlurFrameBudget > 0)
+                blurDrawable.setPreviewFrameBudget(mBlurFrameBudget);
+        }
+        if (mViewBackground instanceof BlurredKenBurnsDrawable && mBlurFrameBudget > 0)
+            ((BlurredKenBurnsDrawable) mViewBackground).setFrameBudget(mBlurFrameBudget);
+        if (mViewBackground instanceof KenBurnsDrawable)
+            ((KenBurnsDrawable) mViewBackground).setTargetFrameRate(mBackgroundFrameRate);
+    }
+
+    /**
+     * Draws background, overlay and icon in separate child layers, behind other children. While
+     * header scrolls only translation, scale and color of layers change, so neither header nor
+     * layers have to be redrawn and render thread just moves their display lists. Background layer
+     * is redrawn only when background itself changes, eg. with Ken Burns effect or blur.
+     */
+    public void setLayeredDrawing(boolean layeredDrawing) {
+        if (mLayeredDrawing == layeredDrawing)
+            return;
+
+        mLayeredDrawing = layeredDrawing;
+        if (layeredDrawing) {
+            final Context context = getContext();
+            mBackgroundLayer = new BackgroundLayer(context);
+            mOverlayLayer = new View(context);
+            mIconLayer = new IconLayer(context);
+            mIconLayer.setPivotX(0);
+            mIconLayer.setPivotY(0);
+            // icon doesn't change while scrolling, so its layer is rendered once and then scaled
+            mIconLayer.setLayerType(LAYER_TYPE_HARDWARE, null);
+            mOverlayLayerColor = 0;
+            addView(mBackgroundLayer, 0, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            addView(mOverlayLayer, 1, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            addView(mIconLayer, 2, new LayoutParams(mIconSize, mIconSize, Gravity.LEFT | Gravity.TOP));
+            updateLayers();
+        } else {
+            removeView(mBackgroundLayer);
+            removeView(mOverlayLayer);
+            removeView(mIconLayer);
+            mBackgroundLayer = null;
+            mOverlayLayer = null;
+            mIconLayer = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Moves layers to match current translation of header. Only view properties are changed.
+     */
+    private void updateLayers() {
+        if (!mLayeredDrawing)
+            return;
+
+        updateHeaderState();
+        mBackgroundLayer.setTranslationY(mParallaxForBackground ? -getTranslationY() / 2 : 0);
+
+        final int color = mHeaderState.getOverlayColor();
+        if (color != mOverlayLayerColor) {
+            mOverlayLayer.setBackgroundColor(color);
+            mOverlayLayerColor = color;
+        }
+
+        final float scale = mHeaderState.getIconScale();
+        mIconLayer.setTranslationX(mHeaderState.getIconTranslationX());
+        mIconLayer.setTranslationY(mHeaderState.getIconTranslationY());
+        mIconLayer.setScaleX(scale);
+        mIconLayer.setScaleY(scale);
+        updateActionBar();
+    }
+
+    /**
+     * Redraws layers and collapsed snapshot after background or icon was replaced.
+     */
+    private void invalidateLayers() {
+        mCollapsedSnapshotValid = false;
+        if (!mLayeredDrawing)
+            return;
+
+        mBackgroundLayer.invalidate();
+        mIconLayer.invalidate();
+        updateLayers();
+    }
+
+    @Override
+    public void invalidateDrawable(Drawable drawable) {
+        if (drawable == mViewBackground || drawable == mIcon)
+            mCollapsedSnapshotValid = false;
+        if (mLayeredDrawing && drawable == mViewBackground)
+            mBackgroundLayer.invalidate();
+        else if (mLayeredDrawing && drawable == mIcon)
+            mIconLayer.invalidate();
+        else
+            super.invalidateDrawable(drawable);
+    }
+
     private void setupIcon() {
         if (!(mIcon instanceof BitmapDrawable))
             return;
 
-        mIcon = new CircleFramedDrawable(((BitmapDrawable) mIcon).getBitmap(), mIconSize,
-                mFrameColor, mStrokeWidth, mFrameShadowColor, mShadowRadius,
-                mHighlightColor);
+        final Bitmap bitmap = ((BitmapDrawable) mIcon).getBitmap();
+        if (mShaderIcon)
+            mIcon = new CircleShaderDrawable(bitmap, mIconSize, mFrameColor, mStrokeWidth,
+                    mFrameShadowColor, mShadowRadius, mHighlightColor);
+        else
+            mIcon = new CircleFramedDrawable(bitmap, mIconSize,
+                    mFrameColor, mStrokeWidth, mFrameShadowColor, mShadowRadius,
+                    mHighlightColor);
         mIcon.setBounds(0, 0, mIconSize, mIconSize);
+        // framed avatar can be rendered in background
+        mIcon.setCallback(this);
+    }
+
+    private class BackgroundLayer extends View {
+        BackgroundLayer(Context context) {
+            super(context);
+            setWillNotDraw(false);
+        }
+
+        @Override protected void onDraw(Canvas canvas) {
+            drawBackground(canvas);
+        }
+    }
+
+    private class IconLayer extends View {
+        IconLayer(Context context) {
+            super(context);
+            setWillNotDraw(false);
+        }
+
+        @Override protected void onDraw(Canvas canvas) {
+            if (mIcon != null)
+                mIcon.draw(canvas);
+        }
     }
 
     private class PageListener extends SimplePageScrollListener {
@@ -409,6 +817,14 @@ public class ScrollHeader extends FrameLayout {
             moveToYCoordinate(amtToScroll);
         }
 
-        @Override public void onScrollStateChanged(int currentPage, int scrollState) {}
+        @Override public void onScrollStateChanged(int currentPage, int scrollState) {
+            if (!(mViewBackground instanceof BlurDrawable))
+                return;
+
+            if (scrollState == SCROLL_STATE_DRAGGING)
+                ((BlurDrawable) mViewBackground).resetCounters();
+            else if (scrollState == SCROLL_STATE_IDLE)
+                ((BlurDrawable) mViewBackground).refine();
+        }
     }
 }
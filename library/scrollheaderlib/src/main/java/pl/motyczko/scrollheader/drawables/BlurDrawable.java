@@ -5,39 +5,322 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.support.v8.renderscript.Allocation;
-import android.support.v8.renderscript.Element;
-import android.support.v8.renderscript.RenderScript;
-import android.support.v8.renderscript.ScriptIntrinsicBlur;
+import android.os.AsyncTask;
+import android.support.v8.renderscript.RSRuntimeException;
 
+import pl.motyczko.scrollheader.helpers.BlurCache;
+import pl.motyczko.scrollheader.helpers.BlurEngine;
+import pl.motyczko.scrollheader.helpers.BoxBlurEngine;
+import pl.motyczko.scrollheader.helpers.JavaBlurEngine;
+import pl.motyczko.scrollheader.helpers.PixelDiskCache;
+import pl.motyczko.scrollheader.helpers.RenderScriptBlurEngine;
 
+
+/**
+ * BlurDrawable draws bitmap blurred with variable strength. Blur levels are computed in
+ * background, until they are ready unblurred bitmap is drawn.
+ */
 public class BlurDrawable  extends Drawable {
+    /**
+     * Use RenderScript if it is available on device, otherwise fall back to Java implementation
+     */
+    public static final int BLUR_ENGINE_AUTO = 0;
+    public static final int BLUR_ENGINE_RENDERSCRIPT = 1;
+    public static final int BLUR_ENGINE_JAVA = 2;
+    /**
+     * Constant time box blur approximating gaussian, radius is not limited
+     */
+    public static final int BLUR_ENGINE_BOX = 3;
+
+    /**
+     * Number of distinct blur steps used in composite mode
+     */
+    private static final int COMPOSITE_STEPS = 32;
+    /**
+     * Smallest scale of preview bitmap used in continuous mode
+     */
+    private static final float MIN_PREVIEW_SCALE = 1.f / 32;
+
+    private static int sDefaultBlurEngine = BLUR_ENGINE_AUTO;
+    private static float sDefaultDownscaleFactor = 0.25f;
+
     private final Context mApplicationContext;
+    private final int mBlurEngineType;
+    private final float mDownscaleFactor;
     private Bitmap mBitmap;
     private float mMaxBlurRadius = 15.f;
-    private RenderScript mRenderScriptSupport;
-    private ScriptIntrinsicBlur mIntrisicBlurSupport;
+    private BlurTask mBlurTask;
     private float mBlurLevel;
-    private Paint mPaint = new Paint();
-    private Allocation mAllocation;
+    private Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mVisibleRegion = new Rect();
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
 
     private int mBlurredBitmapCacheSize = 3;
 
+    private boolean mCompositeMode = true;
+    private Bitmap mCompositeBitmap;
+    private Canvas mCompositeCanvas;
+    private final Rect mCompositeRect = new Rect();
+    private final Rect mCompositeBand = new Rect();
+    private final Rect mCompositedBand = new Rect();
+    private int mCompositeStep = -1;
+    private int mCompositeCount;
+    private int mDrawCount;
+
+    private boolean mContinuousMode = false;
+    private BoxBlurEngine mPreviewEngine;
+    private int[] mPreviewPixels;
+    private int[] mPreviewBuffer;
+    private int mPreviewBandTop;
+    private int mPreviewBandBottom;
+    private long mPreviewBudgetNanos = 4000000;
+    private float mPreviewScale;
+    private Bitmap mPreviewSource;
+    private Bitmap mPreviewBitmap;
+    private float mPreviewRadius = -1;
+    private Bitmap mRefinedBitmap;
+    private float mRefinedRadius = -1;
+    private RefineTask mRefineTask;
+
     public BlurDrawable(Bitmap bmp, Context ctx) {
+        this(bmp, ctx, sDefaultBlurEngine);
+    }
+
+    public BlurDrawable(Bitmap bmp, Context ctx, int blurEngine) {
+        this(bmp, ctx, blurEngine, sDefaultDownscaleFactor);
+    }
+
+    /**
+     * @param bmp bitmap to blur
+     * @param ctx context
+     * @param blurEngine One of {@link #BLUR_ENGINE_AUTO}, {@link #BLUR_ENGINE_RENDERSCRIPT},
+     * {@link #BLUR_ENGINE_JAVA} or {@link #BLUR_ENGINE_BOX}
+     * @param downscaleFactor (0,1] scale at which blur levels are computed and stored. Levels are
+     * upscaled with filtering when drawn.
+     */
+    public BlurDrawable(Bitmap bmp, Context ctx, int blurEngine, float downscaleFactor) {
         mBitmap = bmp;
         mApplicationContext = ctx.getApplicationContext();
-        initRenderScriptSupport();
+        mBlurEngineType = blurEngine;
+        mDownscaleFactor = Math.max(0.01f, Math.min(1.f, downscaleFactor));
+        mVisibleRegion.set(0, 0, bmp.getWidth(), bmp.getHeight());
+        mPreviewScale = mDownscaleFactor / 2;
+        mBlurTask = new BlurTask();
+        mBlurTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Sets blur engine used by BlurDrawables created without explicit engine.
+     *
+     * @param blurEngine One of {@link #BLUR_ENGINE_AUTO}, {@link #BLUR_ENGINE_RENDERSCRIPT},
+     * {@link #BLUR_ENGINE_JAVA} or {@link #BLUR_ENGINE_BOX}
+     */
+    public static void setDefaultBlurEngine(int blurEngine) {
+        sDefaultBlurEngine = blurEngine;
+    }
+
+    /**
+     * Sets downscale factor used by BlurDrawables created without explicit factor.
+     *
+     * @param downscaleFactor (0,1] scale at which blur levels are computed, eg. 0.25
+     */
+    public static void setDefaultDownscaleFactor(float downscaleFactor) {
+        sDefaultDownscaleFactor = downscaleFactor;
     }
 
     @Override public void draw(Canvas canvas) {
-        int i = mBlurLevel == 1.f ? mBlurredBitmapCacheSize - 1 : (int) ((mBlurLevel * mBlurredBitmapCacheSize) % mBlurredBitmapCacheSize);
+        mDrawCount++;
+        mPaint.setAlpha(255);
+        if (mContinuousMode) {
+            drawContinuous(canvas);
+            return;
+        }
+
+        if (mBitmaps == null || mBlurLevel <= 0.f) {
+            drawRegion(canvas, mBitmap);
+            return;
+        }
+
+        if (mCompositeMode) {
+            drawComposite(canvas);
+            return;
+        }
+
+        int i = getLevelIndex(mBlurLevel);
+
+        drawRegion(canvas, mBitmap);
+        drawRegion(canvas, mBitmaps[i]);
+        mPaint.setAlpha(getLevelAlpha(mBlurLevel, i));
+        drawRegion(canvas, mBitmaps[i+1]);
+    }
+
+    /**
+     * Draws part of bitmap which covers visible region. Bitmap can be scaled version of source
+     * bitmap.
+     */
+    private void drawRegion(Canvas canvas, Bitmap bitmap) {
+        final float sx = (float) bitmap.getWidth() / mBitmap.getWidth();
+        final float sy = (float) bitmap.getHeight() / mBitmap.getHeight();
+        mapRegion(bitmap, mSrcRect);
+        mDstRect.set(mSrcRect.left / sx, mSrcRect.top / sy, mSrcRect.right / sx, mSrcRect.bottom / sy);
+        canvas.drawBitmap(bitmap, mSrcRect, mDstRect, mPaint);
+    }
+
+    /**
+     * Maps visible region to coordinates of bitmap which is scaled version of source bitmap.
+     */
+    private void mapRegion(Bitmap bitmap, Rect out) {
+        final float sx = (float) bitmap.getWidth() / mBitmap.getWidth();
+        final float sy = (float) bitmap.getHeight() / mBitmap.getHeight();
+        out.set((int) (mVisibleRegion.left * sx), (int) (mVisibleRegion.top * sy),
+                Math.min(bitmap.getWidth(), (int) Math.ceil(mVisibleRegion.right * sx)),
+                Math.min(bitmap.getHeight(), (int) Math.ceil(mVisibleRegion.bottom * sy)));
+    }
+
+    /**
+     * Draws blended blur levels with single blit. Levels are blended into composite bitmap only
+     * when quantized blur level changes or visible region grows. Below first blur level sharp
+     * bitmap is drawn at full resolution with first level blended on top, because composite bitmap
+     * has resolution of blurred levels.
+     */
+    private void drawComposite(Canvas canvas) {
+        final int step = Math.round(mBlurLevel * COMPOSITE_STEPS);
+        if (step == 0) {
+            drawRegion(canvas, mBitmap);
+            return;
+        }
+
+        final float level = (float) step / COMPOSITE_STEPS;
+        if (getLevelIndex(level) == 0) {
+            drawRegion(canvas, mBitmap);
+            mPaint.setAlpha(getLevelAlpha(level, 0));
+            drawRegion(canvas, mBitmaps[1]);
+            return;
+        }
+
+        if (mCompositeBitmap == null) {
+            final Bitmap blurred = mBitmaps[mBlurredBitmapCacheSize];
+            mCompositeBitmap = Bitmap.createBitmap(blurred.getWidth(), blurred.getHeight(), Bitmap.Config.ARGB_8888);
+            mCompositeCanvas = new Canvas(mCompositeBitmap);
+            mCompositeRect.set(0, 0, blurred.getWidth(), blurred.getHeight());
+        }
 
+        mapRegion(mCompositeBitmap, mCompositeBand);
+        if (mCompositeBand.isEmpty())
+            return;
+        if (step != mCompositeStep || !mCompositedBand.contains(mCompositeBand)) {
+            composite(level);
+            mCompositeStep = step;
+        }
+        drawRegion(canvas, mCompositeBitmap);
+    }
+
+    /**
+     * Blends blur levels into visible band of composite bitmap.
+     */
+    private void composite(float level) {
+        int i = getLevelIndex(level);
+        mCompositeCanvas.save();
+        mCompositeCanvas.clipRect(mCompositeBand);
+        mCompositeCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        mCompositeCanvas.drawBitmap(mBitmaps[i], null, mCompositeRect, mPaint);
+        mPaint.setAlpha(getLevelAlpha(level, i));
+        mCompositeCanvas.drawBitmap(mBitmaps[i + 1], null, mCompositeRect, mPaint);
         mPaint.setAlpha(255);
-        canvas.drawBitmap(mBitmap, 0, 0, mPaint);
-        canvas.drawBitmap(mBitmaps[i], 0, 0, mPaint);
-        mPaint.setAlpha((int) ((mBlurLevel - i/mBlurredBitmapCacheSize) * mBlurredBitmapCacheSize * 255));
-        canvas.drawBitmap(mBitmaps[i+1], 0, 0, mPaint);
+        mCompositeCanvas.restore();
+        mCompositedBand.set(mCompositeBand);
+        mCompositeCount++;
+    }
+
+    private void drawContinuous(Canvas canvas) {
+        final float radius = mBlurLevel * mMaxBlurRadius;
+        if (radius <= 0.f || mPreviewBitmap == null) {
+            drawRegion(canvas, mBitmap);
+        } else if (mRefinedBitmap != null && mRefinedRadius == radius) {
+            drawRegion(canvas, mRefinedBitmap);
+        } else {
+            drawRegion(canvas, mPreviewBitmap);
+        }
+    }
+
+    /**
+     * Blurs visible band of preview bitmap with exact radius. Preview resolution is adjusted so
+     * blurring fits into preview budget.
+     */
+    private void updatePreview(float radius) {
+        if (radius <= 0.f)
+            return;
+
+        if (mPreviewSource == null) {
+            int width = Math.max(1, Math.round(mBitmap.getWidth() * mPreviewScale));
+            int height = Math.max(1, Math.round(mBitmap.getHeight() * mPreviewScale));
+            mPreviewSource = Bitmap.createScaledBitmap(mBitmap, width, height, true);
+            mPreviewBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mPreviewRadius = -1;
+        }
+
+        mapRegion(mPreviewBitmap, mSrcRect);
+        final int top = mSrcRect.top;
+        final int bottom = mSrcRect.bottom;
+        if (radius == mPreviewRadius && top >= mPreviewBandTop && bottom <= mPreviewBandBottom)
+            return;
+        if (bottom <= top)
+            return;
+
+        // preview is small and blurred on UI thread, so it doesn't wait for shared pool
+        if (mPreviewEngine == null)
+            mPreviewEngine = new BoxBlurEngine(false);
+
+        final long start = System.nanoTime();
+
+        // blur visible rows plus margin, so band edges look the same as in full blur
+        final float previewRadius = radius * mPreviewScale;
+        final int width = mPreviewSource.getWidth();
+        final int margin = (int) Math.ceil(1.5f * previewRadius) + 2;
+        final int from = Math.max(0, top - margin);
+        final int to = Math.min(mPreviewSource.getHeight(), bottom + margin);
+        if (mPreviewPixels == null || mPreviewPixels.length < width * (to - from)) {
+            mPreviewPixels = new int[width * mPreviewSource.getHeight()];
+            mPreviewBuffer = new int[mPreviewPixels.length];
+        }
+        mPreviewSource.getPixels(mPreviewPixels, 0, width, 0, from, width, to - from);
+        mPreviewEngine.blur(mPreviewPixels, mPreviewBuffer, width, to - from, previewRadius);
+        mPreviewBitmap.setPixels(mPreviewPixels, (top - from) * width, width, 0, top, width, bottom - top);
+
+        final long elapsed = System.nanoTime() - start;
+        mPreviewRadius = radius;
+        mPreviewBandTop = top;
+        mPreviewBandBottom = bottom;
+
+        // doubling scale makes four times more pixels, so grow only when far below budget
+        if (elapsed > mPreviewBudgetNanos && mPreviewScale / 2 >= MIN_PREVIEW_SCALE) {
+            mPreviewScale /= 2;
+            mPreviewSource = null;
+            mPreviewPixels = null;
+            mPreviewBuffer = null;
+        } else if (elapsed * 4 < mPreviewBudgetNanos / 2 && mPreviewScale * 2 <= mDownscaleFactor) {
+            mPreviewScale *= 2;
+            mPreviewSource = null;
+            mPreviewPixels = null;
+            mPreviewBuffer = null;
+        }
+    }
+
+    private int getLevelIndex(float level) {
+        return level == 1.f ? mBlurredBitmapCacheSize - 1 : (int) ((level * mBlurredBitmapCacheSize) % mBlurredBitmapCacheSize);
+    }
+
+    private static int clampAlpha(float alpha) {
+        return alpha < 0 ? 0 : (alpha > 255 ? 255 : (int) alpha);
+    }
+
+    private int getLevelAlpha(float level, int index) {
+        return clampAlpha((level * mBlurredBitmapCacheSize - index) * 255);
     }
 
     @Override public void setAlpha(int i) {
@@ -63,6 +346,174 @@ public class BlurDrawable  extends Drawable {
         mMaxBlurRadius = maxBlurRadius;
     }
 
+    /**
+     * Enables or disables composite mode. In composite mode two adjacent blur levels are
+     * blended into one bitmap whenever quantized blur level changes, so every frame is a single
+     * bitmap draw. Enabled by default.
+     */
+    public void setCompositeMode(boolean compositeMode) {
+        mCompositeMode = compositeMode;
+        if (!mCompositeMode) {
+            mCompositeBitmap = null;
+            mCompositeCanvas = null;
+            mCompositeStep = -1;
+        }
+        invalidateSelf();
+    }
+
+    public boolean isCompositeMode() {
+        return mCompositeMode;
+    }
+
+    /**
+     * Limits drawing (and blurring in continuous mode) to given region. Region is in source
+     * bitmap coordinates, eg. part of header which is visible on screen.
+     */
+    public void setVisibleRegion(Rect region) {
+        final int left = Math.max(0, region.left);
+        final int top = Math.max(0, region.top);
+        final int right = Math.min(mBitmap.getWidth(), region.right);
+        final int bottom = Math.min(mBitmap.getHeight(), region.bottom);
+        if (mVisibleRegion.left == left && mVisibleRegion.top == top
+                && mVisibleRegion.right == right && mVisibleRegion.bottom == bottom)
+            return;
+
+        mVisibleRegion.set(left, top, Math.max(left, right), Math.max(top, bottom));
+        if (mContinuousMode)
+            updatePreview(mBlurLevel * mMaxBlurRadius);
+        invalidateSelf();
+    }
+
+    /**
+     * Enables or disables continuous mode. In continuous mode bitmap is blurred with exact radius
+     * for current blur fraction. While scrolling low resolution preview is blurred on calling
+     * thread with box blur, {@link #refine()} computes full quality bitmap in background.
+     */
+    public void setContinuousMode(boolean continuousMode) {
+        if (mContinuousMode == continuousMode)
+            return;
+
+        mContinuousMode = continuousMode;
+        if (mContinuousMode) {
+            // precomputed levels are not used in continuous mode
+            cancel();
+            updatePreview(mBlurLevel * mMaxBlurRadius);
+        } else {
+            cancelRefine();
+            mPreviewSource = null;
+            mPreviewBitmap = null;
+            mPreviewPixels = null;
+            mPreviewBuffer = null;
+            mPreviewRadius = -1;
+            mRefinedBitmap = null;
+            mRefinedRadius = -1;
+            if (mBitmaps == null && mBlurTask == null) {
+                mBlurTask = new BlurTask();
+                mBlurTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            }
+        }
+        invalidateSelf();
+    }
+
+    public boolean isContinuousMode() {
+        return mContinuousMode;
+    }
+
+    /**
+     * Sets how much time can be spent on blurring preview bitmap in continuous mode. Preview
+     * resolution is lowered when blurring takes longer.
+     *
+     * @param budgetMs time in milliseconds
+     */
+    public void setPreviewFrameBudget(float budgetMs) {
+        mPreviewBudgetNanos = (long) (budgetMs * 1000000);
+    }
+
+    /**
+     * Computes full quality blur for current blur fraction in background. Call it when scrolling
+     * stops. Has effect only in continuous mode.
+     */
+    public void refine() {
+        final float radius = mBlurLevel * mMaxBlurRadius;
+        if (!mContinuousMode || radius <= 0.f || radius == mRefinedRadius)
+            return;
+
+        cancelRefine();
+        mRefineTask = new RefineTask(radius);
+        mRefineTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void cancelRefine() {
+        if (mRefineTask != null)
+            mRefineTask.cancel(false);
+        mRefineTask = null;
+    }
+
+    /**
+     * Returns how many times blur levels were blended since last {@link #resetCounters()}
+     */
+    public int getCompositeCount() {
+        return mCompositeCount;
+    }
+
+    /**
+     * Returns how many times drawable was drawn since last {@link #resetCounters()}
+     */
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    /**
+     * Resets composite and draw counters, eg. when new scroll gesture starts.
+     */
+    public void resetCounters() {
+        mCompositeCount = 0;
+        mDrawCount = 0;
+    }
+
+    public float getDownscaleFactor() {
+        return mDownscaleFactor;
+    }
+
+    /**
+     * Returns number of bytes held by blurred levels of this drawable. Source bitmap is not
+     * included as it is owned by caller.
+     */
+    public int getBlurredByteCount() {
+        int bytes = 0;
+        for (int i = 1; mBitmaps != null && i < mBitmaps.length; i++) {
+            if (mBitmaps[i] != null)
+                bytes += mBitmaps[i].getRowBytes() * mBitmaps[i].getHeight();
+        }
+        if (mCompositeBitmap != null)
+            bytes += mCompositeBitmap.getRowBytes() * mCompositeBitmap.getHeight();
+        if (mPreviewSource != null)
+            bytes += mPreviewSource.getRowBytes() * mPreviewSource.getHeight();
+        if (mPreviewBitmap != null)
+            bytes += mPreviewBitmap.getRowBytes() * mPreviewBitmap.getHeight();
+        if (mRefinedBitmap != null)
+            bytes += mRefinedBitmap.getRowBytes() * mRefinedBitmap.getHeight();
+        return bytes;
+    }
+
+    /**
+     * Returns true when blur levels are computed.
+     */
+    public boolean isReady() {
+        return mBitmaps != null;
+    }
+
+    /**
+     * Cancels computation of blur levels if it is still in progress. Drawable will keep drawing
+     * unblurred bitmap.
+     */
+    public void cancel() {
+        if (mBlurTask != null)
+            mBlurTask.cancel(false);
+        mBlurTask = null;
+        cancelRefine();
+    }
+
     /**
      * Blurs bitmap using specified fraction.
      *
@@ -70,45 +521,157 @@ public class BlurDrawable  extends Drawable {
      */
     public void blur(float fraction) {
         mBlurLevel = fraction;
+        if (mContinuousMode) {
+            cancelRefine();
+            updatePreview(mBlurLevel * mMaxBlurRadius);
+        }
         invalidateSelf();
     }
 
     private Bitmap mBitmaps[];
 
-    private void initRenderScriptSupport() {
-        mRenderScriptSupport = RenderScript.create(mApplicationContext);
-        mIntrisicBlurSupport = ScriptIntrinsicBlur.create(mRenderScriptSupport, Element.U8_4(mRenderScriptSupport));
+    private BlurEngine createBlurEngine() {
+        switch (mBlurEngineType) {
+            case BLUR_ENGINE_RENDERSCRIPT:
+                return new RenderScriptBlurEngine(mApplicationContext);
+            case BLUR_ENGINE_JAVA:
+                return new JavaBlurEngine();
+            case BLUR_ENGINE_BOX:
+                return new BoxBlurEngine();
+            default:
+                try {
+                    return new RenderScriptBlurEngine(mApplicationContext);
+                } catch (RSRuntimeException e) {
+                    return new JavaBlurEngine();
+                }
+        }
+    }
+
+    /**
+     * Computes blur levels. Called on background thread, returns null if task was cancelled.
+     * Levels are shared through {@link BlurCache}, so they are never recycled here. If
+     * {@link PixelDiskCache} is installed levels are also read from and stored to disk.
+     */
+    private Bitmap[] createBlurLevels(BlurTask task) {
+        BlurCache cache = BlurCache.getInstance(mApplicationContext);
+        PixelDiskCache diskCache = PixelDiskCache.getInstance();
+        String sourceHash = null;
+        BlurEngine engine = null;
+
+        Bitmap[] bitmaps = new Bitmap[mBlurredBitmapCacheSize + 1];
+        bitmaps[0] = mBitmap;
+
+        final int width = Math.max(1, Math.round(mBitmap.getWidth() * mDownscaleFactor));
+        final int height = Math.max(1, Math.round(mBitmap.getHeight() * mDownscaleFactor));
+        Bitmap scaled = null;
+        for (int i = 1; i < mBlurredBitmapCacheSize + 1 && !task.isCancelled(); i++) {
+            // blur radius is scaled together with bitmap so upscaled result looks the same
+            float radius = i * mMaxBlurRadius * mDownscaleFactor / mBlurredBitmapCacheSize;
+            if (radius <= 0.f)
+                continue;
 
-        mBitmaps = new Bitmap[mBlurredBitmapCacheSize + 1];
-        mBitmaps[0] = mBitmap;
-        for (int i = 1; i < mBlurredBitmapCacheSize + 1; i++) {
-            mBitmaps[i] = blurBackgroundSupport(i * mMaxBlurRadius / mBlurredBitmapCacheSize);
+            BlurCache.Key key = new BlurCache.Key(mBitmap, width, height, radius);
+            bitmaps[i] = cache.get(key);
+            if (bitmaps[i] != null)
+                continue;
+
+            String diskKey = null;
+            if (diskCache != null) {
+                if (sourceHash == null)
+                    sourceHash = PixelDiskCache.hash(mBitmap);
+                diskKey = PixelDiskCache.createKey(sourceHash, "blur", width, height, radius);
+                bitmaps[i] = diskCache.get(diskKey);
+                if (bitmaps[i] != null) {
+                    cache.put(key, bitmaps[i]);
+                    continue;
+                }
+            }
+
+            if (engine == null)
+                engine = createBlurEngine();
+            if (scaled == null)
+                scaled = createScaledSource(width, height);
+            bitmaps[i] = blurBitmap(engine, scaled, radius);
+            cache.put(key, bitmaps[i]);
+            if (diskCache != null)
+                diskCache.put(diskKey, bitmaps[i]);
         }
+        if (scaled != null && scaled != mBitmap)
+            scaled.recycle();
+        if (engine != null)
+            engine.release();
 
-        mAllocation.destroy();
-        mAllocation = null;
-        mIntrisicBlurSupport.destroy();
-        mIntrisicBlurSupport = null;
-        mRenderScriptSupport.destroy();
-        mRenderScriptSupport = null;
+        return task.isCancelled() ? null : bitmaps;
     }
 
-    private Bitmap blurBackgroundSupport(float radius) {
-        radius = Math.round(radius);
+    private Bitmap createScaledSource(int width, int height) {
+        if (width == mBitmap.getWidth() && height == mBitmap.getHeight())
+            return mBitmap;
+        return Bitmap.createScaledBitmap(mBitmap, width, height, true);
+    }
 
-        if (radius <= 0.f)
-            return null;
+    private Bitmap blurBitmap(BlurEngine engine, Bitmap source, float radius) {
+        Bitmap blurred = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        engine.blur(source, blurred, radius);
+        return blurred;
+    }
 
-        Bitmap blurred = mBitmap.copy(mBitmap.getConfig(), true);
+    /**
+     * Blurs bitmap with given radius at full quality. Returns null if task was cancelled.
+     */
+    private Bitmap createRefinedBitmap(RefineTask task, float radius) {
+        final int width = Math.max(1, Math.round(mBitmap.getWidth() * mDownscaleFactor));
+        final int height = Math.max(1, Math.round(mBitmap.getHeight() * mDownscaleFactor));
+        final float scaledRadius = radius * mDownscaleFactor;
+        BlurCache cache = BlurCache.getInstance(mApplicationContext);
+        BlurCache.Key key = new BlurCache.Key(mBitmap, width, height, scaledRadius);
+        Bitmap refined = cache.get(key);
+        if (refined != null || task.isCancelled())
+            return refined;
 
-        mAllocation = Allocation.createFromBitmap(mRenderScriptSupport, blurred);
+        BlurEngine engine = createBlurEngine();
+        Bitmap scaled = createScaledSource(width, height);
+        refined = blurBitmap(engine, scaled, scaledRadius);
+        if (scaled != mBitmap)
+            scaled.recycle();
+        engine.release();
 
-        mAllocation.copyFrom(mBitmap);
-        mIntrisicBlurSupport.setInput(mAllocation);
-        mIntrisicBlurSupport.setRadius(radius);
+        cache.put(key, refined);
+        return task.isCancelled() ? null : refined;
+    }
 
-        mIntrisicBlurSupport.forEach(mAllocation);
-        mAllocation.copyTo(blurred);
-        return blurred;
+    private class RefineTask extends AsyncTask<Void, Void, Bitmap> {
+        private final float mRadius;
+
+        RefineTask(float radius) {
+            mRadius = radius;
+        }
+
+        @Override protected Bitmap doInBackground(Void... params) {
+            return createRefinedBitmap(this, mRadius);
+        }
+
+        @Override protected void onPostExecute(Bitmap bitmap) {
+            if (mRefineTask != this)
+                return;
+            mRefineTask = null;
+            mRefinedBitmap = bitmap;
+            mRefinedRadius = mRadius;
+            invalidateSelf();
+        }
+    }
+
+    private class BlurTask extends AsyncTask<Void, Void, Bitmap[]> {
+        @Override protected Bitmap[] doInBackground(Void... params) {
+            return createBlurLevels(this);
+        }
+
+        @Override protected void onPostExecute(Bitmap[] bitmaps) {
+            if (mBlurTask != this)
+                return;
+            mBlurTask = null;
+            mBitmaps = bitmaps;
+            invalidateSelf();
+        }
     }
 }
@@ -0,0 +1,193 @@
+package pl.motyczko.scrollheader.drawables;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import pl.motyczko.scrollheader.helpers.BoxBlurEngine;
+import pl.motyczko.scrollheader.helpers.SlideSource;
+
+/**
+ * KenBurnsDrawable with blur. Ken Burns frame is rendered into small offscreen bitmap, blurred and
+ * upscaled to drawable bounds. While blurred, animation runs at capped frame rate. Blur strength
+ * is set with {@link #blur(float)}.
+ *
+ * If rendering and blurring a frame repeatedly takes longer than frame budget, animation is
+ * paused and last frame is used as static snapshot, until blur is removed.
+ */
+public class BlurredKenBurnsDrawable extends KenBurnsDrawable {
+    /**
+     * Number of frames over budget after which animation falls back to static snapshot
+     */
+    private static final int MAX_BUDGET_OVERRUNS = 3;
+
+    private final BoxBlurEngine mBlurEngine = new BoxBlurEngine();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private float mBufferScale = 0.125f;
+    private float mMaxBlurRadius = 15.f;
+    private float mMaxFrameRate = 15.f;
+    private float mTargetFrameRate;
+    private long mFrameBudgetNanos = 8000000;
+
+    private Bitmap mFrameBitmap;
+    private Canvas mFrameCanvas;
+    private Bitmap mBlurredBitmap;
+    private int[] mPixels;
+    private int[] mBlurBuffer;
+    private boolean mFrameValid;
+    private float mBlurFraction;
+    private float mBlurredRadius = -1;
+    private int mBudgetOverruns;
+    private boolean mStaticSnapshot;
+
+    public BlurredKenBurnsDrawable(Drawable drawable) {
+        super(drawable);
+    }
+
+    public BlurredKenBurnsDrawable(SlideSource source) {
+        super(source);
+    }
+
+    @Override protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        mFrameBitmap = null;
+        mFrameCanvas = null;
+        mBlurredBitmap = null;
+        mPixels = null;
+        mBlurBuffer = null;
+        mFrameValid = false;
+    }
+
+    /**
+     * Marks offscreen frame as outdated, Ken Burns invalidates drawable only when its frame changed.
+     */
+    @Override public void invalidateSelf() {
+        mFrameValid = false;
+        super.invalidateSelf();
+    }
+
+    /**
+     * Returns true if animation is paused because blurred frames didn't fit into frame budget.
+     */
+    public boolean isStaticSnapshot() {
+        return mStaticSnapshot;
+    }
+
+    @Override public void draw(Canvas canvas) {
+        final Rect bounds = getBounds();
+        final float radius = mBlurFraction * mMaxBlurRadius * mBufferScale;
+        if (radius <= 0.f || bounds.isEmpty()) {
+            super.draw(canvas);
+            return;
+        }
+
+        if (mFrameBitmap == null) {
+            int width = Math.max(1, Math.round(bounds.width() * mBufferScale));
+            int height = Math.max(1, Math.round(bounds.height() * mBufferScale));
+            mFrameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mFrameCanvas = new Canvas(mFrameBitmap);
+            mBlurredBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mPixels = new int[width * height];
+            mBlurBuffer = new int[width * height];
+        }
+
+        final long start = System.nanoTime();
+        boolean frameChanged = false;
+        if (!mFrameValid) {
+            mFrameCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            mFrameCanvas.save();
+            mFrameCanvas.scale(mBufferScale, mBufferScale);
+            super.draw(mFrameCanvas);
+            mFrameCanvas.restore();
+            mFrameValid = true;
+            frameChanged = true;
+        }
+
+        if (frameChanged || radius != mBlurredRadius) {
+            final int width = mFrameBitmap.getWidth();
+            final int height = mFrameBitmap.getHeight();
+            mFrameBitmap.getPixels(mPixels, 0, width, 0, 0, width, height);
+            mBlurEngine.blur(mPixels, mBlurBuffer, width, height, radius);
+            mBlurredBitmap.setPixels(mPixels, 0, width, 0, 0, width, height);
+            mBlurredRadius = radius;
+            checkFrameBudget(System.nanoTime() - start);
+        }
+        canvas.drawBitmap(mBlurredBitmap, null, bounds, mPaint);
+    }
+
+    private void checkFrameBudget(long elapsed) {
+        if (mStaticSnapshot)
+            return;
+
+        mBudgetOverruns = elapsed > mFrameBudgetNanos ? mBudgetOverruns + 1 : 0;
+        if (mBudgetOverruns >= MAX_BUDGET_OVERRUNS) {
+            mStaticSnapshot = true;
+            setAnimationPaused(true);
+        }
+    }
+
+    /**
+     * Caps frame rate of animation while drawable is blurred.
+     */
+    private void updateFrameRate() {
+        float frameRate = mTargetFrameRate;
+        if (mBlurFraction > 0)
+            frameRate = frameRate > 0 ? Math.min(frameRate, mMaxFrameRate) : mMaxFrameRate;
+        super.setTargetFrameRate(frameRate);
+    }
+
+    /**
+     * Sets blur strength.
+     *
+     * @param fraction [0,1] blur fraction
+     */
+    public void blur(float fraction) {
+        mBlurFraction = fraction;
+        updateFrameRate();
+        if (fraction <= 0 && mStaticSnapshot) {
+            // unblurred frames are cheap, so animation resumes
+            mStaticSnapshot = false;
+            mBudgetOverruns = 0;
+            setAnimationPaused(false);
+        }
+        // frame itself didn't change, only its blur
+        super.invalidateSelf();
+    }
+
+    public void setMaxBlurRadius(float maxBlurRadius) {
+        mMaxBlurRadius = maxBlurRadius;
+    }
+
+    /**
+     * Sets scale of offscreen buffer relative to drawable bounds, eg. 0.125
+     */
+    public void setBufferScale(float bufferScale) {
+        mBufferScale = Math.max(0.01f, Math.min(1.f, bufferScale));
+        onBoundsChange(getBounds());
+    }
+
+    /**
+     * Sets maximum rate at which Ken Burns frames are rendered and blurred.
+     */
+    public void setMaxFrameRate(float framesPerSecond) {
+        mMaxFrameRate = Math.max(1.f, framesPerSecond);
+        updateFrameRate();
+    }
+
+    @Override public void setTargetFrameRate(float framesPerSecond) {
+        mTargetFrameRate = Math.max(0, framesPerSecond);
+        updateFrameRate();
+    }
+
+    /**
+     * Sets how much time rendering and blurring of one frame may take.
+     *
+     * @param budgetMs time in milliseconds
+     */
+    public void setFrameBudget(float budgetMs) {
+        mFrameBudgetNanos = (long) (budgetMs * 1000000);
+    }
+}
@@ -31,18 +31,26 @@ import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 
 import pl.motyczko.scrollheader.R;
+import pl.motyczko.scrollheader.helpers.PixelDiskCache;
 
 
 /**
- * Converts the user avatar icon to a circularly clipped one.
+ * Converts the user avatar icon to a circularly clipped one. Framed avatar, including stroke and
+ * shadow, is rendered once for pressed and unpressed state, so drawing is a single bitmap blit.
+ *
+ * When {@link PixelDiskCache} is installed, framed bitmaps are looked up in it and rendered in
+ * background, drawable invalidates itself when they are ready.
  */
 public class CircleFramedDrawable extends Drawable {
 
-    private final Bitmap mBitmap;
     private final int mSize;
     private final Paint mPaint;
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Bitmap mFrame;
+    private Bitmap mPressedFrame;
     private final float mShadowRadius;
     private final float mStrokeWidth;
     private final int mFrameColor;
@@ -50,10 +58,7 @@ public class CircleFramedDrawable extends Drawable {
     private final int mFrameShadowColor;
 
     private float mScale;
-    private Path mFramePath;
-    private Rect mSrcRect;
     private RectF mDstRect;
-    private RectF mFrameRect;
     private boolean mPressed;
 
     public static CircleFramedDrawable getInstance(Context context, Bitmap icon) {
@@ -83,8 +88,56 @@ public class CircleFramedDrawable extends Drawable {
         mStrokeWidth = strokeWidth;
         mHighlightColor = highlightColor;
 
-        mBitmap = Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
-        final Canvas canvas = new Canvas(mBitmap);
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+
+        mScale = 1f;
+        mDstRect = new RectF(0, 0, mSize, mSize);
+
+        final PixelDiskCache diskCache = PixelDiskCache.getInstance();
+        if (diskCache == null) {
+            Bitmap[] frames = createFramedBitmaps(icon);
+            mFrame = frames[0];
+            mPressedFrame = frames[1];
+        } else {
+            // hashing icon and reading cache is slower than drawing, so it is done in background
+            new FrameTask(diskCache, icon).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    /**
+     * Renders framed bitmaps for unpressed and pressed state.
+     */
+    private Bitmap[] createFramedBitmaps(Bitmap icon) {
+        Bitmap circle = createCircleBitmap(icon);
+        Bitmap[] frames = new Bitmap[]{createFramedBitmap(circle, false), createFramedBitmap(circle, true)};
+        circle.recycle();
+        return frames;
+    }
+
+    /**
+     * Returns framed bitmaps from disk cache, rendering and storing them if they are not cached.
+     */
+    private Bitmap[] loadFramedBitmaps(PixelDiskCache diskCache, Bitmap icon) {
+        final String hash = PixelDiskCache.hash(icon);
+        final String key = PixelDiskCache.createKey(hash, "framed", mSize, mStrokeWidth, mShadowRadius,
+                mFrameColor, mFrameShadowColor, mHighlightColor);
+        final String pressedKey = PixelDiskCache.createKey(hash, "framed_pressed", mSize, mStrokeWidth,
+                mShadowRadius, mFrameColor, mFrameShadowColor, mHighlightColor);
+        Bitmap frame = diskCache.get(key);
+        Bitmap pressedFrame = diskCache.get(pressedKey);
+        if (frame != null && pressedFrame != null)
+            return new Bitmap[]{frame, pressedFrame};
+
+        Bitmap[] frames = createFramedBitmaps(icon);
+        diskCache.put(key, frames[0]);
+        diskCache.put(pressedKey, frames[1]);
+        return frames;
+    }
+
+    private Bitmap createCircleBitmap(Bitmap icon) {
+        Bitmap bitmap = Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
 
         final int width = icon.getWidth();
         final int height = icon.getHeight();
@@ -101,8 +154,6 @@ public class CircleFramedDrawable extends Drawable {
         canvas.drawColor(0, PorterDuff.Mode.CLEAR);
 
         // opaque circle matte
-        mPaint = new Paint();
-        mPaint.setAntiAlias(true);
         mPaint.setColor(Color.BLACK);
         mPaint.setStyle(Paint.Style.FILL);
         canvas.drawPath(fillPath, mPaint);
@@ -113,44 +164,52 @@ public class CircleFramedDrawable extends Drawable {
 
         // prepare paint for frame drawing
         mPaint.setXfermode(null);
-
-        mScale = 1f;
-
-        mSrcRect = new Rect(0, 0, mSize, mSize);
-        mDstRect = new RectF(0, 0, mSize, mSize);
-        mFrameRect = new RectF(mDstRect);
-        mFramePath = new Path();
+        return bitmap;
     }
 
-    @Override
-    public void draw(Canvas canvas) {
-        final float inside = mScale * mSize;
-        final float pad = (mSize - inside) / 2f;
-
-        mDstRect.set(pad, pad, mSize - pad, mSize - pad);
-        canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, null);
+    /**
+     * Renders circle bitmap with frame and its shadow.
+     */
+    private Bitmap createFramedBitmap(Bitmap circle, boolean pressed) {
+        Bitmap bitmap = Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.drawBitmap(circle, 0, 0, null);
 
-        mFrameRect.set(mDstRect);
-        mFrameRect.inset(mStrokeWidth / 2f, mStrokeWidth / 2f);
-        mFrameRect.inset(mShadowRadius, mShadowRadius);
+        final RectF frameRect = new RectF(0, 0, mSize, mSize);
+        frameRect.inset(mStrokeWidth / 2f, mStrokeWidth / 2f);
+        frameRect.inset(mShadowRadius, mShadowRadius);
 
-        mFramePath.reset();
-        mFramePath.addArc(mFrameRect, 0f, 360f);
+        final Path framePath = new Path();
+        framePath.addArc(frameRect, 0f, 360f);
 
         // white frame
-        if (mPressed) {
+        if (pressed) {
             mPaint.setStyle(Paint.Style.FILL);
             mPaint.setColor(Color.argb((int) (0.33f * 255),
                     Color.red(mHighlightColor),
                     Color.green(mHighlightColor),
                     Color.blue(mHighlightColor)));
-            canvas.drawPath(mFramePath, mPaint);
+            canvas.drawPath(framePath, mPaint);
         }
         mPaint.setStrokeWidth(mStrokeWidth);
         mPaint.setStyle(Paint.Style.STROKE);
-        mPaint.setColor(mPressed ? mHighlightColor : mFrameColor);
+        mPaint.setColor(pressed ? mHighlightColor : mFrameColor);
         mPaint.setShadowLayer(mShadowRadius, 0f, 0f, mFrameShadowColor);
-        canvas.drawPath(mFramePath, mPaint);
+        canvas.drawPath(framePath, mPaint);
+        mPaint.clearShadowLayer();
+        return bitmap;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final float inside = mScale * mSize;
+        final float pad = (mSize - inside) / 2f;
+
+        final Bitmap frame = mPressed ? mPressedFrame : mFrame;
+        if (frame == null)
+            return;
+        mDstRect.set(pad, pad, mSize - pad, mSize - pad);
+        canvas.drawBitmap(frame, null, mDstRect, mBitmapPaint);
     }
 
     public void setScale(float scale) {
@@ -187,4 +246,24 @@ public class CircleFramedDrawable extends Drawable {
     public int getIntrinsicHeight() {
         return mSize;
     }
-}
\ No newline at end of file
+
+    private class FrameTask extends AsyncTask<Void, Void, Bitmap[]> {
+        private final PixelDiskCache mDiskCache;
+        private final Bitmap mIcon;
+
+        FrameTask(PixelDiskCache diskCache, Bitmap icon) {
+            mDiskCache = diskCache;
+            mIcon = icon;
+        }
+
+        @Override protected Bitmap[] doInBackground(Void... params) {
+            return loadFramedBitmaps(mDiskCache, mIcon);
+        }
+
+        @Override protected void onPostExecute(Bitmap[] frames) {
+            mFrame = frames[0];
+            mPressedFrame = frames[1];
+            invalidateSelf();
+        }
+    }
+}
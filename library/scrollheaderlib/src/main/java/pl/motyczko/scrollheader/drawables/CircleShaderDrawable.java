@@ -0,0 +1,141 @@
+package pl.motyczko.scrollheader.drawables;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
+
+import pl.motyczko.scrollheader.R;
+
+/**
+ * Circle avatar drawn straight from source bitmap through {@link BitmapShader}. Center crop is
+ * done by shader local matrix, so unlike {@link CircleFramedDrawable} no intermediate bitmap is
+ * allocated and construction is cheap. Frame shadow is drawn with radial gradient instead of
+ * shadow layer.
+ */
+public class CircleShaderDrawable extends Drawable {
+    private final Paint mIconPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Paint mHighlightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mFramePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mShadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int mSize;
+    private final float mRadius;
+    private final float mShadowOuterRadius;
+    private final int mFrameColor;
+    private final int mHighlightColor;
+
+    private float mScale = 1.f;
+    private boolean mPressed;
+
+    public static CircleShaderDrawable getInstance(Context context, Bitmap icon) {
+        Resources res = context.getResources();
+        float iconSize = res.getDimension(R.dimen.circle_avatar_size);
+        float strokeWidth = res.getDimension(R.dimen.circle_avatar_frame_stroke_width);
+        float shadowRadius = res.getDimension(R.dimen.circle_avatar_frame_shadow_radius);
+        int frameColor = res.getColor(R.color.circle_avatar_frame_color);
+        int frameShadowColor = res.getColor(R.color.circle_avatar_frame_shadow_color);
+        int highlightColor = res.getColor(R.color.circle_avatar_frame_pressed_color);
+
+        return new CircleShaderDrawable(icon, (int) iconSize, frameColor, strokeWidth,
+                frameShadowColor, shadowRadius, highlightColor);
+    }
+
+    public CircleShaderDrawable(Bitmap icon, int size,
+                                int frameColor, float strokeWidth,
+                                int frameShadowColor, float shadowRadius,
+                                int highlightColor) {
+        mSize = size;
+        mFrameColor = frameColor;
+        mHighlightColor = highlightColor;
+        mRadius = size / 2f - strokeWidth / 2f - shadowRadius;
+
+        // center crop of icon mapped onto circle
+        final int square = Math.min(icon.getWidth(), icon.getHeight());
+        final float scale = 2 * mRadius / square;
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-(icon.getWidth() - square) / 2f, -(icon.getHeight() - square) / 2f);
+        matrix.postScale(scale, scale);
+        matrix.postTranslate(size / 2f - mRadius, size / 2f - mRadius);
+        BitmapShader shader = new BitmapShader(icon, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(matrix);
+        mIconPaint.setShader(shader);
+
+        mHighlightPaint.setColor(Color.argb((int) (0.33f * 255),
+                Color.red(highlightColor), Color.green(highlightColor), Color.blue(highlightColor)));
+
+        mFramePaint.setStyle(Paint.Style.STROKE);
+        mFramePaint.setStrokeWidth(strokeWidth);
+
+        // ring fading out on both sides of the frame
+        final float frameInner = Math.max(0, mRadius - strokeWidth / 2f);
+        final float frameOuter = mRadius + strokeWidth / 2f;
+        mShadowOuterRadius = frameOuter + shadowRadius;
+        if (shadowRadius > 0) {
+            final int transparent = frameShadowColor & 0x00ffffff;
+            mShadowPaint.setShader(new RadialGradient(size / 2f, size / 2f, mShadowOuterRadius,
+                    new int[]{transparent, transparent, frameShadowColor, frameShadowColor, transparent},
+                    new float[]{0, Math.max(0, frameInner - shadowRadius) / mShadowOuterRadius,
+                            frameInner / mShadowOuterRadius, frameOuter / mShadowOuterRadius, 1},
+                    Shader.TileMode.CLAMP));
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final float center = mSize / 2f;
+        canvas.save();
+        canvas.scale(mScale, mScale, center, center);
+        if (mShadowPaint.getShader() != null)
+            canvas.drawCircle(center, center, mShadowOuterRadius, mShadowPaint);
+        canvas.drawCircle(center, center, mRadius, mIconPaint);
+        if (mPressed)
+            canvas.drawCircle(center, center, mRadius, mHighlightPaint);
+        mFramePaint.setColor(mPressed ? mHighlightColor : mFrameColor);
+        canvas.drawCircle(center, center, mRadius, mFramePaint);
+        canvas.restore();
+    }
+
+    public void setScale(float scale) {
+        mScale = scale;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    public void setPressed(boolean pressed) {
+        mPressed = pressed;
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mSize;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mSize;
+    }
+}
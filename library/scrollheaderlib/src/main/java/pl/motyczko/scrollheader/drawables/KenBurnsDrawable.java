@@ -1,24 +1,85 @@
 package pl.motyczko.scrollheader.drawables;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
+import android.os.AsyncTask;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
 
 import java.util.Random;
 
+import pl.motyczko.scrollheader.helpers.FrameClock;
+import pl.motyczko.scrollheader.helpers.KenBurnsPath;
+import pl.motyczko.scrollheader.helpers.PowerSaveMonitor;
+import pl.motyczko.scrollheader.helpers.SlideSource;
+
 /**
  * KenBurnsDrawable is drawable with Ken Burns effect animation.
+ *
+ * Animation is driven by library wide {@link FrameClock}, shared by all Ken Burns drawables.
+ * Motion follows precomputed {@link KenBurnsPath}, which can be seeded to get reproducible
+ * animation. Keyframes of every segment are resolved once when segment starts, so frames only
+ * interpolate between them and don't allocate.
+ *
+ * When created with {@link SlideSource}, only current and next slide are decoded (in background,
+ * downsampled to drawable bounds) and slides which left the rotation are recycled.
+ *
+ * Animation is paused while drawable is invisible, see {@link #setVisible(boolean, boolean)}.
  */
-public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListener {
+public class KenBurnsDrawable extends Drawable implements FrameClock.Animation, Drawable.Callback {
     private static final String LOG_TAG = "KenBurns";
+    private static final int FADE_DURATION_MS = 1000;
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    /**
+     * Keyframe layout
+     */
+    private static final int SCALE = 0;
+    private static final int TRANSLATION_X = 1;
+    private static final int TRANSLATION_Y = 2;
+    private static final int KEYFRAME_SIZE = 3;
+
+    /**
+     * Slides are decoded at least this many times bigger than bounds, so zoomed frames stay sharp
+     */
+    private static final float DECODE_SCALE_FACTOR = 1.5f;
+
+    /**
+     * How far ahead on pan path tiles of {@link TiledDrawable} are prefetched
+     */
+    private static final long PREFETCH_AHEAD_MS = 500;
+
+    /**
+     * Frame rate used while battery saver is on
+     */
+    private static final float LOW_POWER_FRAME_RATE = 12.f;
+
+    /**
+     * Frame under frame rate cap is drawn when it is due within this many milliseconds, about half
+     * of vsync interval, because clock deltas are whole milliseconds
+     */
+    private static final float FRAME_TOLERANCE_MS = 8.f;
+
+    /**
+     * Drawable is invalidated only if some point of image moves further than this many pixels
+     */
+    private static final float MIN_MOTION_PX = 0.5f;
+
     private Drawable[] mDrawables;
     private int mCurrentDrawable = 0;
-    private final Random mRandom = new Random();
+    private KenBurnsPath mPath;
+    /**
+     * Path set while animation runs, it replaces current path when animation is started again
+     */
+    private KenBurnsPath mPendingPath;
+    private int mSegment;
+    private long mPanDuration;
+    private long mFadeDuration;
     private int mSwapMs = 10000;
     private int mFadeInOutMs = 400;
 
@@ -32,13 +93,39 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
     private int mAlpha = 0;
     private float mTranslationX = 0.f;
     private float mTranslationY = 0.f;
-    private float mNextScale;
-    private float mNextTranslationX;
-    private float mNextTranslationY;
-    private Animator mAnimator;
+    private float[] mFrom = new float[KEYFRAME_SIZE];
+    private float[] mTo = new float[KEYFRAME_SIZE];
+    private float[] mNextFrom = new float[KEYFRAME_SIZE];
+    private float[] mNextTo = new float[KEYFRAME_SIZE];
+    private boolean mNextPlanned;
+    private long mSegmentTime;
+    private final Interpolator mInterpolator = new AccelerateDecelerateInterpolator();
+    private boolean mStarted;
+    private boolean mPaused;
     private boolean mAnimate = false;
     private ColorFilter mColorFilter;
 
+    private SlideSource mSlideSource;
+    private int mSlidePosition;
+    /**
+     * Number of positions after current slide skipped because they couldn't be decoded
+     */
+    private int mSkippedSlides;
+    private int mFailedSlides;
+    private final SlideTask[] mSlideTasks = new SlideTask[2];
+    private boolean mReleased;
+    private final Rect mViewport = new Rect();
+
+    private float mTargetFrameRate;
+    private boolean mAutoLowPowerMode = true;
+    private long mPendingTime;
+    private float mFramePhase;
+    private float mDrawnScale;
+    private float mDrawnTranslationX;
+    private float mDrawnTranslationY;
+    private int mDrawnFrameCount;
+    private int mSkippedFrameCount;
+
     public KenBurnsDrawable(Drawable drawable) {
         mHeight = drawable.getIntrinsicHeight();
         mWidth = drawable.getIntrinsicWidth();
@@ -51,12 +138,24 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
         } else {
             mDrawables = new Drawable[]{drawable, drawable};
         }
+        // tiled drawable invalidates itself when tiles are decoded
+        if (drawable instanceof TiledDrawable)
+            drawable.setCallback(this);
     }
 
     public KenBurnsDrawable(Drawable[] drawables) {
         mDrawables = drawables;
     }
 
+    /**
+     * Creates drawable which streams slides from given source. Slides are decoded after bounds
+     * are set.
+     */
+    public KenBurnsDrawable(SlideSource source) {
+        mSlideSource = source;
+        mDrawables = new Drawable[2];
+    }
+
     @Override public int getIntrinsicWidth() {
         return mWidth;
     }
@@ -68,39 +167,128 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
     @Override public void setBounds (int left, int top, int right, int bottom) {
         super.setBounds(left, top, right, bottom);
 
-        for (Drawable d : mDrawables)
-            d.setBounds(0, 0, mWidth, mHeight);
+        for (Drawable d : mDrawables) {
+            if (d != null)
+                d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
+        }
+        loadSlides();
     }
 
     public boolean isAnimating() { return mAnimate; }
 
     public void animate() {
-        mAnimator = createAnimator();
-        mAnimator.start();
         mAnimate = true;
+        if (mDrawables[mCurrentDrawable] == null) {
+            // started when current slide is decoded
+            return;
+        }
+
+        if (mPendingPath != null) {
+            mPath = mPendingPath;
+            mPendingPath = null;
+        }
+        getPath();
+        mSegment = 0;
+        mPanDuration = (long) mPath.get(mSegment, KenBurnsPath.PAN_DURATION);
+        mFadeDuration = (long) mPath.get(mSegment, KenBurnsPath.FADE_DURATION);
+        planSegment(mDrawables[mCurrentDrawable], mSegment, mFrom, mTo);
+        mNextPlanned = false;
+        mSegmentTime = 0;
+        mPendingTime = 0;
+        mFramePhase = 0;
+        mAlpha = 0;
+        applyKeyframes(0.f);
+
+        mStarted = true;
+        if (isVisible() && !mPaused)
+            FrameClock.getInstance().add(this);
+    }
+
+    /**
+     * Pauses animation when drawable becomes invisible and resumes it from the same position when
+     * it becomes visible again.
+     */
+    @Override public boolean setVisible(boolean visible, boolean restart) {
+        final boolean changed = super.setVisible(visible, restart);
+        if (changed && mAnimate && mStarted) {
+            if (visible && !mPaused)
+                FrameClock.getInstance().add(this);
+            else
+                FrameClock.getInstance().remove(this);
+        }
+        return changed;
+    }
+
+    /**
+     * Pauses or resumes started animation, keeping its position.
+     */
+    protected void setAnimationPaused(boolean paused) {
+        mPaused = paused;
+        if (!mAnimate || !mStarted)
+            return;
+        if (paused || !isVisible())
+            FrameClock.getInstance().remove(this);
+        else
+            FrameClock.getInstance().add(this);
     }
 
     public void stopAnimation() {
-        if (mAnimator != null)
-            mAnimator.cancel();
+        FrameClock.getInstance().remove(this);
         mAnimate = false;
     }
 
+    /**
+     * Stops animation, cancels slide decoding and releases decoded slides and tiled images shown by
+     * drawable. Drawable can't be drawn afterwards.
+     */
+    public void release() {
+        mReleased = true;
+        stopAnimation();
+        for (int slot = 0; slot < mSlideTasks.length; slot++) {
+            if (mSlideTasks[slot] != null)
+                mSlideTasks[slot].cancel(false);
+            mSlideTasks[slot] = null;
+        }
+        if (mSlideSource != null) {
+            releaseSlide(0);
+            releaseSlide(1);
+            return;
+        }
+        for (Drawable d : mDrawables) {
+            if (d instanceof TiledDrawable)
+                ((TiledDrawable) d).release();
+        }
+    }
+
     @Override public void draw(Canvas canvas) {
 //        Log.i(LOG_TAG, "draw");
+        Drawable d = mDrawables[mCurrentDrawable];
+        if (d == null)
+            return;
+        mDrawnScale = mScale;
+        mDrawnTranslationX = mTranslationX;
+        mDrawnTranslationY = mTranslationY;
+        mDrawnFrameCount++;
         canvas.save();
         canvas.scale(mScale, mScale);
         canvas.translate(mTranslationX, mTranslationY);
-        Drawable d = mDrawables[mCurrentDrawable];
+        if (d instanceof TiledDrawable) {
+            computeViewport(mScale, mTranslationX, mTranslationY, mViewport);
+            ((TiledDrawable) d).setViewport(mViewport, mScale);
+        }
         d.setAlpha(0xFF);
         d.setColorFilter(mColorFilter);
         d.draw(canvas);
         canvas.restore();
         if ( mAlpha != 0) {
-            d = mDrawables[mDrawables.length == mCurrentDrawable + 1 ? 0 : mCurrentDrawable + 1];
+            d = mDrawables[getNextDrawableIndex()];
             canvas.save();
-            canvas.scale(mNextScale, mNextScale);
-            canvas.translate(mNextTranslationX, mNextTranslationY);
+            canvas.scale(mNextFrom[SCALE], mNextFrom[SCALE]);
+            canvas.translate(mNextFrom[TRANSLATION_X], mNextFrom[TRANSLATION_Y]);
+            if (d instanceof TiledDrawable) {
+                computeViewport(mNextFrom[SCALE], mNextFrom[TRANSLATION_X], mNextFrom[TRANSLATION_Y], mViewport);
+                ((TiledDrawable) d).setViewport(mViewport, mNextFrom[SCALE]);
+            }
             d.setAlpha(mAlpha);
             d.setColorFilter(mColorFilter);
             d.draw(canvas);
@@ -109,6 +297,18 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
         }
     }
 
+    @Override public void invalidateDrawable(Drawable who) {
+        invalidateSelf();
+    }
+
+    @Override public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        scheduleSelf(what, when);
+    }
+
+    @Override public void unscheduleDrawable(Drawable who, Runnable what) {
+        unscheduleSelf(what);
+    }
+
     @Override public void setAlpha(int i) {
         mAlpha = i;
         invalidateSelf();
@@ -126,21 +326,59 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
         return 0;
     }
 
-    private float pickScale() {
-        return mMinScaleFactor + mRandom.nextFloat() * (mMaxScaleFactor - mMinScaleFactor);
+    private float resolveScale(float scale) {
+        return mMinScaleFactor + scale * (mMaxScaleFactor - mMinScaleFactor);
     }
 
-    private float pickTranslation(int bounds, int intrinsic, float ratio) {
+    private float resolveTranslation(float translation, int bounds, int intrinsic, float ratio) {
         float maxTranslation = intrinsic - bounds/ratio;
-        float random = mRandom.nextFloat();
-        return random * -maxTranslation;
+        return translation * -maxTranslation;
     }
 
-    private Animator createAnimator() {
+    /**
+     * Sets path which animation follows. Takes effect when animation is started.
+     */
+    public void setPath(KenBurnsPath path) {
+        if (mAnimate && mStarted) {
+            // running segment belongs to current path
+            mPendingPath = path;
+        } else {
+            mPath = path;
+            mPendingPath = null;
+        }
+    }
+
+    /**
+     * Returns path which animation follows, it can be used to replay the same motion.
+     */
+    public KenBurnsPath getPath() {
+        if (mPath == null)
+            mPath = KenBurnsPath.plan(new Random().nextLong(), DEFAULT_SEGMENT_COUNT, mDuration, FADE_DURATION_MS);
+        return mPath;
+    }
+
+    /**
+     * Makes animation deterministic, the same seed always gives the same motion.
+     */
+    public void setSeed(long seed) {
+        setPath(KenBurnsPath.plan(seed, DEFAULT_SEGMENT_COUNT, mDuration, FADE_DURATION_MS));
+    }
+
+    private int getNextSegment() {
+        return mPath.getSegmentCount() == mSegment + 1 ? 0 : mSegment + 1;
+    }
+
+    private int getNextDrawableIndex() {
+        return mDrawables.length == mCurrentDrawable + 1 ? 0 : mCurrentDrawable + 1;
+    }
+
+    /**
+     * Resolves normalized keyframes of path segment to keyframes of given drawable.
+     */
+    private void planSegment(Drawable drawable, int segment, float[] from, float[] to) {
         Rect rect = getBounds();
-        Drawable nextDrawable = mDrawables[mDrawables.length == mCurrentDrawable + 1 ? 0 : mCurrentDrawable + 1];
-        mWidth = nextDrawable.getIntrinsicWidth();
-        mHeight = nextDrawable.getIntrinsicHeight();
+        mWidth = drawable.getIntrinsicWidth();
+        mHeight = drawable.getIntrinsicHeight();
 
         if (mWidth * rect.height() > rect.width() * mHeight) {
             mMinScaleFactor = (float) rect.height() / (float) mHeight;
@@ -150,23 +388,277 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
 
         mMaxScaleFactor = mMinScaleFactor + 0.5f;
 
-        mNextScale = pickScale();
-        float toScale = pickScale();
+        final KenBurnsPath path = mPath;
+        from[SCALE] = resolveScale(path.get(segment, KenBurnsPath.SCALE_FROM));
+        to[SCALE] = resolveScale(path.get(segment, KenBurnsPath.SCALE_TO));
+
+        from[TRANSLATION_X] = resolveTranslation(path.get(segment, KenBurnsPath.TRANSLATION_X_FROM), rect.width(), mWidth, from[SCALE]);
+        from[TRANSLATION_Y] = resolveTranslation(path.get(segment, KenBurnsPath.TRANSLATION_Y_FROM), rect.height(), mHeight, from[SCALE]);
+        to[TRANSLATION_X] = resolveTranslation(path.get(segment, KenBurnsPath.TRANSLATION_X_TO), rect.width(), mWidth, to[SCALE]);
+        to[TRANSLATION_Y] = resolveTranslation(path.get(segment, KenBurnsPath.TRANSLATION_Y_TO), rect.height(), mHeight, to[SCALE]);
+    }
+
+    /**
+     * Computes part of drawable visible in bounds at given scale and translation.
+     */
+    private void computeViewport(float scale, float translationX, float translationY, Rect out) {
+        final Rect bounds = getBounds();
+        out.set((int) Math.floor(-translationX), (int) Math.floor(-translationY),
+                (int) Math.ceil(-translationX + bounds.width() / scale),
+                (int) Math.ceil(-translationY + bounds.height() / scale));
+    }
+
+    /**
+     * Requests tiles of tiled drawable needed at given point of segment.
+     */
+    private void prefetch(Drawable drawable, float[] from, float[] to, float fraction) {
+        if (!(drawable instanceof TiledDrawable))
+            return;
+        final float scale = from[SCALE] + (to[SCALE] - from[SCALE]) * fraction;
+        computeViewport(scale,
+                from[TRANSLATION_X] + (to[TRANSLATION_X] - from[TRANSLATION_X]) * fraction,
+                from[TRANSLATION_Y] + (to[TRANSLATION_Y] - from[TRANSLATION_Y]) * fraction,
+                mViewport);
+        ((TiledDrawable) drawable).prefetch(mViewport, scale);
+    }
+
+    private void applyKeyframes(float fraction) {
+        mScale = mFrom[SCALE] + (mTo[SCALE] - mFrom[SCALE]) * fraction;
+        mTranslationX = mFrom[TRANSLATION_X] + (mTo[TRANSLATION_X] - mFrom[TRANSLATION_X]) * fraction;
+        mTranslationY = mFrom[TRANSLATION_Y] + (mTo[TRANSLATION_Y] - mFrom[TRANSLATION_Y]) * fraction;
+    }
+
+    @Override public void doAnimationFrame(long deltaMs) {
+        if (!mAnimate)
+            return;
+
+        mPendingTime += deltaMs;
+        float frameRate = mTargetFrameRate;
+        if (isLowPowerMode())
+            frameRate = frameRate > 0 ? Math.min(frameRate, LOW_POWER_FRAME_RATE) : LOW_POWER_FRAME_RATE;
+        if (frameRate > 0) {
+            final float interval = 1000.f / frameRate;
+            mFramePhase += deltaMs;
+            if (mFramePhase + FRAME_TOLERANCE_MS < interval) {
+                mSkippedFrameCount++;
+                return;
+            }
+            // remainder is carried over, so drawn frames keep the cap on average
+            mFramePhase = Math.min(mFramePhase - interval, interval);
+        }
+
+        final long delta = mPendingTime;
+        mPendingTime = 0;
+        advance(delta);
+    }
+
+    /**
+     * Limits rate at which animation is advanced and drawn.
+     *
+     * @param framesPerSecond maximum frame rate, 0 for display refresh rate
+     */
+    public void setTargetFrameRate(float framesPerSecond) {
+        mTargetFrameRate = Math.max(0, framesPerSecond);
+    }
+
+    /**
+     * Enables or disables lowering frame rate while battery saver is on. Enabled by default.
+     */
+    public void setAutoLowPowerMode(boolean enabled) {
+        mAutoLowPowerMode = enabled;
+    }
+
+    public boolean isLowPowerMode() {
+        return mAutoLowPowerMode && PowerSaveMonitor.isPowerSaveMode();
+    }
+
+    /**
+     * Returns number of frames drawn
+     */
+    public int getDrawnFrameCount() {
+        return mDrawnFrameCount;
+    }
+
+    /**
+     * Returns number of clock frames which didn't invalidate drawable, because of frame rate cap or
+     * because motion was too small to be visible
+     */
+    public int getSkippedFrameCount() {
+        return mSkippedFrameCount;
+    }
+
+    public void resetFrameCounters() {
+        mDrawnFrameCount = 0;
+        mSkippedFrameCount = 0;
+    }
+
+    /**
+     * Returns true if current pose moves some point of image further than {@link #MIN_MOTION_PX}
+     * from where it was last drawn.
+     */
+    private boolean exceedsMotionThreshold() {
+        final float scale = Math.max(mScale, mDrawnScale);
+        final float motion = Math.abs(mTranslationX - mDrawnTranslationX) * scale
+                + Math.abs(mTranslationY - mDrawnTranslationY) * scale
+                + Math.abs(mScale - mDrawnScale) * Math.max(mWidth, mHeight);
+        return motion > MIN_MOTION_PX;
+    }
+
+    /**
+     * Moves animation forward. Every segment pans current drawable and then fades in next drawable
+     * at start keyframe of its segment. Drawable is invalidated only if frame visibly changed.
+     */
+    private void advance(long deltaMs) {
+        final int alpha = mAlpha;
+        final int current = mCurrentDrawable;
+
+        mSegmentTime += deltaMs;
+        if (mSegmentTime < mPanDuration) {
+            applyKeyframes(mInterpolator.getInterpolation((float) mSegmentTime / mPanDuration));
+            mAlpha = 0;
+            final float ahead = Math.min(1.f, (float) (mSegmentTime + PREFETCH_AHEAD_MS) / mPanDuration);
+            prefetch(mDrawables[mCurrentDrawable], mFrom, mTo, mInterpolator.getInterpolation(ahead));
+        } else if (mDrawables[getNextDrawableIndex()] == null) {
+            // next slide is still decoding, hold last frame of current segment
+            mSegmentTime = mPanDuration;
+            applyKeyframes(1.f);
+            mAlpha = 0;
+        } else if (mSegmentTime < mPanDuration + mFadeDuration) {
+            if (!mNextPlanned) {
+                applyKeyframes(1.f);
+                planSegment(mDrawables[getNextDrawableIndex()], getNextSegment(), mNextFrom, mNextTo);
+                prefetch(mDrawables[getNextDrawableIndex()], mNextFrom, mNextTo, 0.f);
+                mNextPlanned = true;
+            }
+            float fraction = (float) (mSegmentTime - mPanDuration) / mFadeDuration;
+            mAlpha = (int) (0xFF * mInterpolator.getInterpolation(fraction));
+        } else {
+            if (!mNextPlanned)
+                planSegment(mDrawables[getNextDrawableIndex()], getNextSegment(), mNextFrom, mNextTo);
+            final int previous = mCurrentDrawable;
+            mCurrentDrawable = getNextDrawableIndex();
+            if (mSlideSource != null) {
+                releaseSlide(previous);
+                mSlidePosition = (mSlidePosition + 1 + mSkippedSlides) % mSlideSource.getCount();
+                mSkippedSlides = 0;
+                loadSlides();
+            }
+
+            float[] swap = mFrom;
+            mFrom = mNextFrom;
+            mNextFrom = swap;
+            swap = mTo;
+            mTo = mNextTo;
+            mNextTo = swap;
+
+            mSegment = getNextSegment();
+            mPanDuration = (long) mPath.get(mSegment, KenBurnsPath.PAN_DURATION);
+            mFadeDuration = (long) mPath.get(mSegment, KenBurnsPath.FADE_DURATION);
+            mNextPlanned = false;
+            mSegmentTime = 0;
+            mAlpha = 0;
+            applyKeyframes(0.f);
+        }
+
+        if (alpha != mAlpha || current != mCurrentDrawable || exceedsMotionThreshold())
+            invalidateSelf();
+        else
+            mSkippedFrameCount++;
+    }
+
+    /**
+     * Starts decoding of current and next slide if they are not decoded yet.
+     */
+    private void loadSlides() {
+        final Rect bounds = getBounds();
+        if (mReleased || mSlideSource == null || mSlideSource.getCount() == 0 || bounds.isEmpty())
+            return;
+
+        for (int slot = 0; slot < mDrawables.length; slot++) {
+            if (mDrawables[slot] != null || mSlideTasks[slot] != null)
+                continue;
+
+            final int position = getSlidePosition(slot);
+            final int other = slot == 0 ? 1 : 0;
+            if (mDrawables[other] != null && getSlidePosition(other) == position) {
+                // single slide is shown in both slots
+                mDrawables[slot] = mDrawables[other];
+                continue;
+            }
+
+            mSlideTasks[slot] = new SlideTask(slot, position,
+                    (int) Math.ceil(bounds.width() * DECODE_SCALE_FACTOR),
+                    (int) Math.ceil(bounds.height() * DECODE_SCALE_FACTOR));
+            mSlideTasks[slot].executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    private int getSlidePosition(int slot) {
+        return slot == mCurrentDrawable ? mSlidePosition
+                : (mSlidePosition + 1 + mSkippedSlides) % mSlideSource.getCount();
+    }
+
+    private void onSlideLoaded(int slot, Bitmap bitmap) {
+        mSlideTasks[slot] = null;
+        if (mReleased) {
+            if (bitmap != null)
+                bitmap.recycle();
+            return;
+        }
+        if (bitmap == null) {
+            onSlideFailed(slot);
+            return;
+        }
 
-        mNextTranslationX = pickTranslation(rect.width(), mWidth, mNextScale);
-        mNextTranslationY = pickTranslation(rect.height(), mHeight, mNextScale);
-        float toTranslationX = pickTranslation(rect.width(), mWidth, toScale);
-        float toTranslationY = pickTranslation(rect.height(), mHeight, toScale);
+        mFailedSlides = 0;
+
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        Drawable drawable = new BitmapDrawable(null, bitmap);
+        drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mDrawables[slot] = drawable;
+        if (slot == mCurrentDrawable) {
+            mWidth = bitmap.getWidth();
+            mHeight = bitmap.getHeight();
+            if (mAnimate && !mStarted)
+                animate();
+        }
+        loadSlides();
+        invalidateSelf();
+    }
 
-        AnimatorSet animatorSet = new AnimatorSet();
-        animatorSet.playTogether(new Animator[]{
-                ObjectAnimator.ofFloat(this, "scale", mNextScale, toScale),
-                ObjectAnimator.ofFloat(this, "translationX", mNextTranslationX, toTranslationX),
-                ObjectAnimator.ofFloat(this, "translationY", mNextTranslationY, toTranslationY)
-        });
-        animatorSet.setDuration(mDuration);
-        animatorSet.addListener(this);
-        return animatorSet;
+    /**
+     * Skips slide which couldn't be decoded and loads the one after it. Animation is stopped when
+     * no slide of source can be decoded.
+     */
+    private void onSlideFailed(int slot) {
+        final int count = mSlideSource.getCount();
+        if (++mFailedSlides >= count) {
+            stopAnimation();
+            return;
+        }
+
+        if (slot == mCurrentDrawable) {
+            // current slide is decoded only at start, next slot is reloaded after new current one
+            final int other = slot == 0 ? 1 : 0;
+            mSlideTasks[other] = null;
+            releaseSlide(other);
+            mSlidePosition = (mSlidePosition + 1) % count;
+            mSkippedSlides = 0;
+        } else {
+            mSkippedSlides++;
+        }
+        loadSlides();
+    }
+
+    /**
+     * Removes slide from slot and recycles its bitmap unless it is still shown in other slot.
+     */
+    private void releaseSlide(int slot) {
+        final Drawable drawable = mDrawables[slot];
+        mDrawables[slot] = null;
+        if (drawable == null || drawable == mDrawables[slot == 0 ? 1 : 0])
+            return;
+        ((BitmapDrawable) drawable).getBitmap().recycle();
     }
 
     public void setScale(float scale) {
@@ -196,48 +688,35 @@ public class KenBurnsDrawable extends Drawable implements Animator.AnimatorListe
         return mTranslationY;
     }
 
-    @Override public void onAnimationStart(Animator animator) {
-
-    }
-
-    @Override public void onAnimationEnd(Animator animator) {
-        if (!mAnimate)
-            return;
-
-        final Animator nextAnimator = createAnimator();
-
-        ObjectAnimator anim = ObjectAnimator.ofInt(this, "alpha", 0, 0xFF).setDuration(1000);
-        anim.addListener(new Animator.AnimatorListener() {
-            @Override public void onAnimationStart(Animator animator) {
-
-            }
-
-            @Override public void onAnimationEnd(Animator animator) {
-                mAlpha = 0;
-                mCurrentDrawable = mDrawables.length == mCurrentDrawable + 1 ? 0 : mCurrentDrawable + 1;
-                if (!mAnimate)
-                    return;
-                nextAnimator.start();
-                mAnimator = nextAnimator;
-            }
-
-            @Override public void onAnimationCancel(Animator animator) {
-
-            }
+    private class SlideTask extends AsyncTask<Void, Void, Bitmap> {
+        private final int mSlot;
+        private final int mPosition;
+        private final int mReqWidth;
+        private final int mReqHeight;
+
+        SlideTask(int slot, int position, int reqWidth, int reqHeight) {
+            mSlot = slot;
+            mPosition = position;
+            mReqWidth = reqWidth;
+            mReqHeight = reqHeight;
+        }
 
-            @Override public void onAnimationRepeat(Animator animator) {
+        @Override protected Bitmap doInBackground(Void... params) {
+            return mSlideSource.decode(mPosition, mReqWidth, mReqHeight);
+        }
 
+        @Override protected void onPostExecute(Bitmap bitmap) {
+            if (mSlideTasks[mSlot] != this) {
+                if (bitmap != null)
+                    bitmap.recycle();
+                return;
             }
-        });
-        anim.start();
-        mAnimator = anim;
-    }
-
-    @Override public void onAnimationCancel(Animator animator) {
-
-    }
-
-    @Override public void onAnimationRepeat(Animator animator) {
+            onSlideLoaded(mSlot, bitmap);
+        }
 
+        @Override protected void onCancelled(Bitmap bitmap) {
+            if (bitmap != null)
+                bitmap.recycle();
+        }
     }
 }
@@ -0,0 +1,456 @@
+package pl.motyczko.scrollheader.drawables;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Drawable for huge images. Image is never decoded as a whole, only tiles intersecting current
+ * viewport are decoded with {@link BitmapRegionDecoder}, at sample size matching current scale.
+ * Decoded tiles are kept in bounded LRU cache. Until tile is decoded, its area is drawn from low
+ * resolution preview of whole image. Requests for tiles which left viewport before their turn
+ * came are skipped by decoding thread.
+ *
+ * Owner should pass viewport and scale with {@link #setViewport(Rect, float)} before drawing and
+ * can request tiles which will be needed soon with {@link #prefetch(Rect, float)}. Without
+ * viewport, canvas clip bounds at scale 1 are used.
+ */
+public class TiledDrawable extends Drawable {
+    /**
+     * Size of tile in decoded pixels
+     */
+    private static final int TILE_SIZE = 256;
+    /**
+     * Maximum size of low resolution preview
+     */
+    private static final int PREVIEW_SIZE = 1024;
+    /**
+     * Prefetch requests are dropped when so many tiles are already waiting for decoding
+     */
+    private static final int MAX_PENDING_PREFETCH = 8;
+    private static final int DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+    private static ExecutorService sExecutor;
+
+    private final BitmapRegionDecoder mDecoder;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mMaxCacheSize;
+    private final LongSparseArray<Tile> mTiles = new LongSparseArray<Tile>();
+    private final LongSparseArray<TileRequest> mPending = new LongSparseArray<TileRequest>();
+    private final ArrayList<TileRequest> mRequestPool = new ArrayList<TileRequest>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private Bitmap mPreview;
+    private int mPreviewSample;
+
+    private final Rect mViewport = new Rect();
+    private final Rect mDrawViewport = new Rect();
+    private float mScale = 1.f;
+    private final Rect mTileRect = new Rect();
+    private final Rect mPreviewSrc = new Rect();
+    private final RectF mTileDst = new RectF();
+    /**
+     * Tiles drawn last time and tiles of last prefetch, in tile coordinates, pending requests
+     * outside both are skipped
+     */
+    private final Rect mVisibleTiles = new Rect();
+    private int mVisibleSample;
+    private final Rect mPrefetchTiles = new Rect();
+    private int mPrefetchSample;
+
+    private int mTileCacheSize;
+    private long mTileUseCount;
+    private int mDecodedTileCount;
+    private int mTileRequestCount;
+    private volatile boolean mReleased;
+
+    public TiledDrawable(String pathName) throws IOException {
+        this(BitmapRegionDecoder.newInstance(pathName, false), DEFAULT_CACHE_SIZE);
+    }
+
+    public TiledDrawable(InputStream stream) throws IOException {
+        this(BitmapRegionDecoder.newInstance(stream, false), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param decoder decoder of image, it is recycled in {@link #release()}
+     * @param maxCacheSize maximum number of bytes used by decoded tiles
+     */
+    public TiledDrawable(BitmapRegionDecoder decoder, int maxCacheSize) {
+        mDecoder = decoder;
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mMaxCacheSize = maxCacheSize;
+
+        mPreviewSample = 1;
+        while (Math.max(mWidth, mHeight) / mPreviewSample > PREVIEW_SIZE)
+            mPreviewSample *= 2;
+        new PreviewTask().executeOnExecutor(getExecutor());
+    }
+
+    private static synchronized Executor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TiledDrawable");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    @Override public int getIntrinsicWidth() {
+        return mWidth;
+    }
+
+    @Override public int getIntrinsicHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Sets part of image which will be drawn.
+     *
+     * @param viewport visible part of image in image coordinates
+     * @param scale number of screen pixels per image pixel
+     */
+    public void setViewport(Rect viewport, float scale) {
+        mViewport.set(viewport);
+        mScale = scale;
+    }
+
+    /**
+     * Starts decoding of tiles which will be needed to draw given viewport.
+     *
+     * @param viewport part of image in image coordinates
+     * @param scale number of screen pixels per image pixel
+     */
+    public void prefetch(Rect viewport, float scale) {
+        if (mReleased || mPending.size() >= MAX_PENDING_PREFETCH)
+            return;
+
+        final int sample = getSample(scale);
+        final int span = TILE_SIZE * sample;
+        final int left = Math.max(0, viewport.left) / span;
+        final int top = Math.max(0, viewport.top) / span;
+        final int right = (Math.min(mWidth, viewport.right) - 1) / span;
+        final int bottom = (Math.min(mHeight, viewport.bottom) - 1) / span;
+        if (sample != mPrefetchSample || !isTileRange(mPrefetchTiles, left, top, right, bottom)) {
+            mPrefetchSample = sample;
+            mPrefetchTiles.set(left, top, right + 1, bottom + 1);
+            updatePendingRequests();
+        }
+        for (int row = top; row <= bottom; row++) {
+            for (int col = left; col <= right; col++) {
+                if (mPending.size() >= MAX_PENDING_PREFETCH)
+                    return;
+                final long key = createKey(sample, col, row);
+                if (mTiles.get(key) == null)
+                    requestTile(key, sample, col, row);
+            }
+        }
+    }
+
+    @Override public void draw(Canvas canvas) {
+        if (mReleased)
+            return;
+
+        float scale = mScale;
+        if (mViewport.isEmpty()) {
+            if (!canvas.getClipBounds(mDrawViewport))
+                return;
+            scale = 1.f;
+        } else {
+            mDrawViewport.set(mViewport);
+        }
+        if (!mDrawViewport.intersect(0, 0, mWidth, mHeight))
+            return;
+
+        final int sample = getSample(scale);
+        final int span = TILE_SIZE * sample;
+        final int left = mDrawViewport.left / span;
+        final int top = mDrawViewport.top / span;
+        final int right = (mDrawViewport.right - 1) / span;
+        final int bottom = (mDrawViewport.bottom - 1) / span;
+        if (sample != mVisibleSample || !isTileRange(mVisibleTiles, left, top, right, bottom)) {
+            mVisibleSample = sample;
+            mVisibleTiles.set(left, top, right + 1, bottom + 1);
+            updatePendingRequests();
+        }
+        for (int row = top; row <= bottom; row++) {
+            for (int col = left; col <= right; col++) {
+                getTileRect(span, col, row, mTileRect);
+                mTileDst.set(mTileRect);
+
+                final long key = createKey(sample, col, row);
+                final Tile tile = mTiles.get(key);
+                if (tile != null) {
+                    tile.mLastUse = ++mTileUseCount;
+                    canvas.drawBitmap(tile.mBitmap, null, mTileDst, mPaint);
+                    continue;
+                }
+
+                requestTile(key, sample, col, row);
+                if (mPreview != null) {
+                    mPreviewSrc.set(mTileRect.left / mPreviewSample, mTileRect.top / mPreviewSample,
+                            (mTileRect.right + mPreviewSample - 1) / mPreviewSample,
+                            (mTileRect.bottom + mPreviewSample - 1) / mPreviewSample);
+                    canvas.drawBitmap(mPreview, mPreviewSrc, mTileDst, mPaint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns largest power of two sample size which doesn't make image smaller than on screen.
+     */
+    private static int getSample(float scale) {
+        int sample = 1;
+        while (sample * 2 * scale <= 1.f)
+            sample *= 2;
+        return sample;
+    }
+
+    private void getTileRect(int span, int col, int row, Rect out) {
+        out.set(col * span, row * span, Math.min(mWidth, (col + 1) * span), Math.min(mHeight, (row + 1) * span));
+    }
+
+    private static long createKey(int sample, int col, int row) {
+        return ((long) sample << 48) | ((long) col << 24) | row;
+    }
+
+    private void requestTile(long key, int sample, int col, int row) {
+        if (mPending.get(key) != null)
+            return;
+        mTileRequestCount++;
+
+        final int last = mRequestPool.size() - 1;
+        final TileRequest request = last >= 0 ? mRequestPool.remove(last) : new TileRequest();
+        request.mKey = key;
+        request.mSample = sample;
+        request.mCol = col;
+        request.mRow = row;
+        request.mSkip = false;
+        request.mDecoded = false;
+        request.mSkipped = false;
+        getTileRect(TILE_SIZE * sample, col, row, request.mRect);
+        mPending.put(key, request);
+        getExecutor().execute(request);
+    }
+
+    private static boolean isTileRange(Rect tiles, int left, int top, int right, int bottom) {
+        return tiles.left == left && tiles.top == top && tiles.right == right + 1 && tiles.bottom == bottom + 1;
+    }
+
+    private boolean isWanted(TileRequest request) {
+        return (request.mSample == mVisibleSample && mVisibleTiles.contains(request.mCol, request.mRow))
+                || (request.mSample == mPrefetchSample && mPrefetchTiles.contains(request.mCol, request.mRow));
+    }
+
+    /**
+     * Marks pending requests outside visible and prefetched tiles, so they are not decoded.
+     */
+    private void updatePendingRequests() {
+        for (int i = 0; i < mPending.size(); i++) {
+            final TileRequest request = mPending.valueAt(i);
+            request.mSkip = !isWanted(request);
+        }
+    }
+
+    private void onTileDecoded(TileRequest request) {
+        final Bitmap bitmap = request.mBitmap;
+        final boolean skipped = request.mSkipped;
+        mPending.remove(request.mKey);
+        request.mBitmap = null;
+        mRequestPool.add(request);
+
+        if (mReleased) {
+            if (bitmap != null)
+                bitmap.recycle();
+            return;
+        }
+        if (bitmap == null) {
+            // tile could come back into viewport after it was skipped, next draw requests it again
+            if (skipped && isWanted(request))
+                invalidateSelf();
+            return;
+        }
+        putTile(request.mKey, bitmap);
+        mDecodedTileCount++;
+        invalidateSelf();
+    }
+
+    private void putTile(long key, Bitmap bitmap) {
+        final Tile tile = new Tile(bitmap);
+        tile.mLastUse = ++mTileUseCount;
+        mTiles.put(key, tile);
+        mTileCacheSize += tile.mSize;
+        // least recently drawn tiles are evicted, tiles are put and drawn only on main thread, so
+        // evicted tile is not in use
+        while (mTileCacheSize > mMaxCacheSize && mTiles.size() > 1) {
+            int oldest = 0;
+            for (int i = 1; i < mTiles.size(); i++) {
+                if (mTiles.valueAt(i).mLastUse < mTiles.valueAt(oldest).mLastUse)
+                    oldest = i;
+            }
+            removeTileAt(oldest);
+        }
+    }
+
+    private void removeTileAt(int index) {
+        final Tile tile = mTiles.valueAt(index);
+        mTiles.removeAt(index);
+        mTileCacheSize -= tile.mSize;
+        tile.mBitmap.recycle();
+    }
+
+    /**
+     * Drops decoded tiles and recycles decoder. Drawable can't be drawn afterwards.
+     */
+    public void release() {
+        if (mReleased)
+            return;
+        mReleased = true;
+        while (mTiles.size() > 0)
+            removeTileAt(mTiles.size() - 1);
+        if (mPreview != null)
+            mPreview.recycle();
+        mPreview = null;
+        // recycled on decoding thread after pending decodes, so main thread doesn't wait for them
+        getExecutor().execute(new Runnable() {
+            @Override public void run() {
+                synchronized (mDecoder) {
+                    mDecoder.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns number of tiles decoded so far
+     */
+    public int getDecodedTileCount() {
+        return mDecodedTileCount;
+    }
+
+    /**
+     * Returns number of tiles requested for decoding, including prefetched ones
+     */
+    public int getTileRequestCount() {
+        return mTileRequestCount;
+    }
+
+    /**
+     * Returns number of bytes used by decoded tiles
+     */
+    public int getTileCacheSize() {
+        return mTileCacheSize;
+    }
+
+    @Override public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override public void setColorFilter(ColorFilter cf) {
+        mPaint.setColorFilter(cf);
+        invalidateSelf();
+    }
+
+    @Override public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private Bitmap decodeRegion(Rect rect, int sample) {
+        // decoder is recycled on main thread, so check is done under its lock
+        synchronized (mDecoder) {
+            if (mReleased || mDecoder.isRecycled())
+                return null;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sample;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            return mDecoder.decodeRegion(rect, options);
+        }
+    }
+
+    private static class Tile {
+        final Bitmap mBitmap;
+        final int mSize;
+        long mLastUse;
+
+        Tile(Bitmap bitmap) {
+            mBitmap = bitmap;
+            mSize = bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    }
+
+    /**
+     * Request for decoding of single tile. It is run first on decoding thread and then posted back
+     * to main thread with the result. Requests are pooled, so cache misses don't allocate.
+     */
+    private class TileRequest implements Runnable {
+        final Rect mRect = new Rect();
+        long mKey;
+        int mSample;
+        int mCol;
+        int mRow;
+        /**
+         * Set on main thread when tile leaves viewport before it was decoded
+         */
+        volatile boolean mSkip;
+        boolean mDecoded;
+        boolean mSkipped;
+        Bitmap mBitmap;
+
+        @Override public void run() {
+            if (mDecoded) {
+                onTileDecoded(this);
+                return;
+            }
+            mSkipped = mSkip;
+            if (!mSkipped)
+                mBitmap = decodeRegion(mRect, mSample);
+            mDecoded = true;
+            mHandler.post(this);
+        }
+    }
+
+    private class PreviewTask extends AsyncTask<Void, Void, Bitmap> {
+        @Override protected Bitmap doInBackground(Void... params) {
+            return decodeRegion(new Rect(0, 0, mWidth, mHeight), mPreviewSample);
+        }
+
+        @Override protected void onPostExecute(Bitmap bitmap) {
+            if (bitmap == null)
+                return;
+            if (mReleased) {
+                bitmap.recycle();
+                return;
+            }
+            mPreview = bitmap;
+            invalidateSelf();
+        }
+    }
+}
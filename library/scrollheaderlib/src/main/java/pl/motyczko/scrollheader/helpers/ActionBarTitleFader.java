@@ -0,0 +1,52 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.app.ActionBar;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Fades action bar title in as header collapses. Setting title makes action bar lay out the title
+ * again, so alpha is quantized to {@link #ALPHA_STEPS} levels and title is set only when
+ * quantized alpha changes, not on every frame.
+ */
+public class ActionBarTitleFader {
+    /**
+     * Number of alpha levels between transparent and opaque title
+     */
+    private static final int ALPHA_STEPS = 32;
+
+    private final ActionBar mActionBar;
+    private final Interpolator mInterpolator = new AccelerateInterpolator();
+    private final AlphaForegroundColorSpan mSpan = new AlphaForegroundColorSpan(0xffffffff);
+    private SpannableString mTitle;
+    private int mAlphaStep = -1;
+
+    public ActionBarTitleFader(ActionBar actionBar) {
+        mActionBar = actionBar;
+    }
+
+    /**
+     * Updates alpha of title.
+     *
+     * @param fraction [0,1] collapse fraction of header
+     */
+    public void setFraction(float fraction) {
+        final float alpha = mInterpolator.getInterpolation(Math.max(0.f, Math.min(1.f, fraction)));
+        final int step = Math.round(alpha * ALPHA_STEPS);
+        if (step == mAlphaStep)
+            return;
+
+        if (mTitle == null) {
+            final CharSequence title = mActionBar.getTitle();
+            if (title == null)
+                return;
+            mTitle = new SpannableString(title);
+        }
+        mAlphaStep = step;
+        mSpan.setAlpha((float) step / ALPHA_STEPS);
+        mTitle.setSpan(mSpan, 0, mTitle.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        mActionBar.setTitle(mTitle);
+    }
+}
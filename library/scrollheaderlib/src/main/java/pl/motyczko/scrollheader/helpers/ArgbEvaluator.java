@@ -41,17 +41,23 @@ public class ArgbEvaluator implements TypeEvaluator {
      * resulting values in the same way.
      */
     public Object evaluate(float fraction, Object startValue, Object endValue) {
-        int startInt = (Integer) startValue;
-        int startA = (startInt >> 24) & 0xff;
-        int startR = (startInt >> 16) & 0xff;
-        int startG = (startInt >> 8) & 0xff;
-        int startB = startInt & 0xff;
+        return evaluate(fraction, ((Integer) startValue).intValue(), ((Integer) endValue).intValue());
+    }
+
+    /**
+     * Same as {@link #evaluate(float, Object, Object)}, but works on primitive colors, so it
+     * doesn't box arguments and result and can be called while drawing.
+     */
+    public static int evaluate(float fraction, int startValue, int endValue) {
+        int startA = (startValue >> 24) & 0xff;
+        int startR = (startValue >> 16) & 0xff;
+        int startG = (startValue >> 8) & 0xff;
+        int startB = startValue & 0xff;
 
-        int endInt = (Integer) endValue;
-        int endA = (endInt >> 24) & 0xff;
-        int endR = (endInt >> 16) & 0xff;
-        int endG = (endInt >> 8) & 0xff;
-        int endB = endInt & 0xff;
+        int endA = (endValue >> 24) & 0xff;
+        int endR = (endValue >> 16) & 0xff;
+        int endG = (endValue >> 8) & 0xff;
+        int endB = endValue & 0xff;
 
         return (int)((startA + (int)(fraction * (endA - startA))) << 24) |
                 (int)((startR + (int)(fraction * (endR - startR))) << 16) |
@@ -0,0 +1,106 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Process wide cache of blurred bitmaps. Cache is bounded by total number of bytes held by
+ * bitmaps and evicts least recently used entries. It trims itself when system asks application
+ * to reduce memory usage.
+ *
+ * Bitmaps returned from cache are shared, so they must not be recycled or modified.
+ */
+public class BlurCache extends LruCache<BlurCache.Key, Bitmap> implements ComponentCallbacks2 {
+    private static BlurCache sInstance;
+
+    /**
+     * Returns shared cache instance. First call creates cache which can use up to 1/8 of
+     * available heap.
+     */
+    public static synchronized BlurCache getInstance(Context context) {
+        if (sInstance == null) {
+            int maxSize = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+            sInstance = new BlurCache(maxSize);
+            context.getApplicationContext().registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param maxSize maximum number of bytes held by cached bitmaps
+     */
+    public BlurCache(int maxSize) {
+        super(maxSize);
+    }
+
+    @Override protected int sizeOf(Key key, Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+        }
+    }
+
+    @Override public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Identifies blurred bitmap by source bitmap (its identity and generation id), size of
+     * blurred bitmap and blur radius. Source bitmap is referenced weakly, so cache doesn't keep
+     * it alive.
+     */
+    public static final class Key {
+        private final WeakReference<Bitmap> mSource;
+        private final int mSourceHash;
+        private final int mGenerationId;
+        private final int mWidth;
+        private final int mHeight;
+        private final float mRadius;
+
+        public Key(Bitmap source, int width, int height, float radius) {
+            mSource = new WeakReference<Bitmap>(source);
+            mSourceHash = System.identityHashCode(source);
+            mGenerationId = source.getGenerationId();
+            mWidth = width;
+            mHeight = height;
+            mRadius = radius;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            Bitmap source = mSource.get();
+            return source != null && source == key.mSource.get()
+                    && mGenerationId == key.mGenerationId
+                    && mWidth == key.mWidth
+                    && mHeight == key.mHeight
+                    && Float.compare(mRadius, key.mRadius) == 0;
+        }
+
+        @Override public int hashCode() {
+            int result = mSourceHash;
+            result = 31 * result + mGenerationId;
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + Float.floatToIntBits(mRadius);
+            return result;
+        }
+    }
+}
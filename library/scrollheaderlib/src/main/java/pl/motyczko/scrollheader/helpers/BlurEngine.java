@@ -0,0 +1,25 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.graphics.Bitmap;
+
+/**
+ * BlurEngine is a pluggable backend used by {@link pl.motyczko.scrollheader.drawables.BlurDrawable}
+ * to produce blurred copies of a bitmap.
+ */
+public interface BlurEngine {
+
+    /**
+     * Blurs input bitmap and writes result to output bitmap. Both bitmaps must have the same size
+     * and output bitmap must be mutable.
+     *
+     * @param input source bitmap, it is not modified
+     * @param output destination bitmap
+     * @param radius blur radius in pixels
+     */
+    public void blur(Bitmap input, Bitmap output, float radius);
+
+    /**
+     * Releases all resources held by engine. Engine cannot be used after this call.
+     */
+    public void release();
+}
@@ -0,0 +1,206 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.graphics.Bitmap;
+
+/**
+ * {@link BlurEngine} approximating gaussian blur with three successive box blurs. Every box
+ * blur uses sliding window, so cost per pixel doesn't depend on radius and radius is not limited
+ * like in ScriptIntrinsicBlur. Rows and columns are processed in parallel bands, unless engine
+ * is created as sequential.
+ */
+public class BoxBlurEngine implements BlurEngine {
+    private static final int PASSES = 3;
+
+    private final boolean mParallel;
+
+    public BoxBlurEngine() {
+        this(true);
+    }
+
+    /**
+     * @param parallel false to run all passes on calling thread, eg. for small images blurred
+     * on UI thread, which shouldn't wait for shared pool
+     */
+    public BoxBlurEngine(boolean parallel) {
+        mParallel = parallel;
+    }
+
+    @Override public void blur(Bitmap input, Bitmap output, float radius) {
+        final int width = input.getWidth();
+        final int height = input.getHeight();
+        int[] pixels = new int[width * height];
+        input.getPixels(pixels, 0, width, 0, 0, width, height);
+        blur(pixels, width, height, radius);
+        output.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    @Override public void release() {
+        // thread pool is shared between all engines
+    }
+
+    /**
+     * Blurs ARGB pixel buffer in place.
+     *
+     * @param pixels ARGB pixels, row after row
+     * @param width width of image
+     * @param height height of image
+     * @param radius blur radius in pixels, it is interpreted the same way as in
+     * {@link JavaBlurEngine}
+     */
+    public void blur(int[] pixels, int width, int height, float radius) {
+        if (radius <= 0.f || width == 0 || height == 0)
+            return;
+        blur(pixels, new int[width * height], width, height, radius);
+    }
+
+    /**
+     * Blurs ARGB pixel buffer in place, using given buffer for intermediate passes, so repeated
+     * blurs don't allocate pixel arrays.
+     *
+     * @param pixels ARGB pixels, row after row
+     * @param buffer buffer with at least width * height elements
+     * @param width width of image
+     * @param height height of image
+     * @param radius blur radius in pixels
+     */
+    public void blur(int[] pixels, int[] buffer, int width, int height, float radius) {
+        if (radius <= 0.f || width == 0 || height == 0)
+            return;
+
+        final int[] boxes = createBoxes(0.4f * radius + 0.6f);
+        int[] input = pixels;
+        int[] output = buffer;
+        for (int box : boxes) {
+            run(new HorizontalBoxPass(input, output, width, height, box), height);
+            int[] swap = input;
+            input = output;
+            output = swap;
+        }
+        for (int box : boxes) {
+            run(new VerticalBoxPass(input, output, width, height, box), width);
+            int[] swap = input;
+            input = output;
+            output = swap;
+        }
+        if (input != pixels)
+            System.arraycopy(input, 0, pixels, 0, width * height);
+    }
+
+    private void run(JavaBlurEngine.Pass pass, int count) {
+        if (mParallel)
+            JavaBlurEngine.runInBands(pass, count);
+        else
+            pass.run(0, count);
+    }
+
+    /**
+     * Returns radii of box blurs which applied one after another approximate gaussian blur with
+     * given sigma.
+     */
+    private static int[] createBoxes(float sigma) {
+        final double ideal = Math.sqrt(12 * sigma * sigma / PASSES + 1);
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0)
+            lower--;
+        final int upper = lower + 2;
+        final long lowerCount = Math.round((12 * sigma * sigma - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES)
+                / (-4.0 * lower - 4));
+
+        int[] boxes = new int[PASSES];
+        for (int i = 0; i < PASSES; i++) {
+            boxes[i] = ((i < lowerCount ? lower : upper) - 1) / 2;
+        }
+        return boxes;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    private static class HorizontalBoxPass implements JavaBlurEngine.Pass {
+        private final int[] mInput;
+        private final int[] mOutput;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mRadius;
+
+        HorizontalBoxPass(int[] input, int[] output, int width, int height, int radius) {
+            mInput = input;
+            mOutput = output;
+            mWidth = width;
+            mHeight = height;
+            mRadius = radius;
+        }
+
+        @Override public void run(int from, int to) {
+            final int lastX = mWidth - 1;
+            final int size = 2 * mRadius + 1;
+            final int half = size / 2;
+            for (int y = from; y < to; y++) {
+                final int row = y * mWidth;
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int k = -mRadius; k <= mRadius; k++) {
+                    final int color = mInput[row + clamp(k, lastX)];
+                    a += color >>> 24;
+                    r += (color >> 16) & 0xff;
+                    g += (color >> 8) & 0xff;
+                    b += color & 0xff;
+                }
+                for (int x = 0; x < mWidth; x++) {
+                    mOutput[row + x] = ((a + half) / size) << 24 | ((r + half) / size) << 16
+                            | ((g + half) / size) << 8 | ((b + half) / size);
+
+                    final int removed = mInput[row + clamp(x - mRadius, lastX)];
+                    final int added = mInput[row + clamp(x + mRadius + 1, lastX)];
+                    a += (added >>> 24) - (removed >>> 24);
+                    r += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+                    g += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+                    b += (added & 0xff) - (removed & 0xff);
+                }
+            }
+        }
+    }
+
+    private static class VerticalBoxPass implements JavaBlurEngine.Pass {
+        private final int[] mInput;
+        private final int[] mOutput;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mRadius;
+
+        VerticalBoxPass(int[] input, int[] output, int width, int height, int radius) {
+            mInput = input;
+            mOutput = output;
+            mWidth = width;
+            mHeight = height;
+            mRadius = radius;
+        }
+
+        @Override public void run(int from, int to) {
+            final int lastY = mHeight - 1;
+            final int size = 2 * mRadius + 1;
+            final int half = size / 2;
+            for (int x = from; x < to; x++) {
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int k = -mRadius; k <= mRadius; k++) {
+                    final int color = mInput[clamp(k, lastY) * mWidth + x];
+                    a += color >>> 24;
+                    r += (color >> 16) & 0xff;
+                    g += (color >> 8) & 0xff;
+                    b += color & 0xff;
+                }
+                for (int y = 0; y < mHeight; y++) {
+                    mOutput[y * mWidth + x] = ((a + half) / size) << 24 | ((r + half) / size) << 16
+                            | ((g + half) / size) << 8 | ((b + half) / size);
+
+                    final int removed = mInput[clamp(y - mRadius, lastY) * mWidth + x];
+                    final int added = mInput[clamp(y + mRadius + 1, lastY) * mWidth + x];
+                    a += (added >>> 24) - (removed >>> 24);
+                    r += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+                    g += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+                    b += (added & 0xff) - (removed & 0xff);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Library wide frame clock. All registered animations are advanced from single vsync callback,
+ * so their invalidations land in the same frame. Total time spent in animations per frame is
+ * capped, animations which don't fit are advanced first in the next frame and don't lose time.
+ *
+ * Must be used from main thread.
+ */
+public final class FrameClock implements Choreographer.FrameCallback {
+    /**
+     * Animation driven by frame clock.
+     */
+    public interface Animation {
+        /**
+         * Advances animation.
+         *
+         * @param deltaMs time since previous frame of this animation, 0 for its first frame
+         */
+        public void doAnimationFrame(long deltaMs);
+    }
+
+    private static final long DEFAULT_FRAME_BUDGET_NANOS = 4000000;
+
+    private static FrameClock sInstance;
+
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+    private boolean mScheduled;
+    private int mNextEntry;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+
+    private long mLastFrameCostNanos;
+    private long mMaxFrameCostNanos;
+    private int mLastFrameAnimationCount;
+    private long mFrameCount;
+    private long mDeferredCount;
+
+    public static FrameClock getInstance() {
+        if (sInstance == null)
+            sInstance = new FrameClock();
+        return sInstance;
+    }
+
+    private FrameClock() {
+    }
+
+    /**
+     * Starts driving given animation. Does nothing if animation is already running.
+     */
+    public void add(Animation animation) {
+        if (indexOf(animation) >= 0)
+            return;
+        mEntries.add(new Entry(animation));
+        if (!mScheduled) {
+            mChoreographer.postFrameCallback(this);
+            mScheduled = true;
+        }
+    }
+
+    /**
+     * Stops driving given animation.
+     */
+    public void remove(Animation animation) {
+        final int index = indexOf(animation);
+        if (index < 0)
+            return;
+        mEntries.remove(index);
+        if (mNextEntry > index)
+            mNextEntry--;
+        if (mEntries.isEmpty() && mScheduled) {
+            mChoreographer.removeFrameCallback(this);
+            mScheduled = false;
+        }
+    }
+
+    public boolean isRunning(Animation animation) {
+        return indexOf(animation) >= 0;
+    }
+
+    private int indexOf(Animation animation) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).mAnimation == animation)
+                return i;
+        }
+        return -1;
+    }
+
+    @Override public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        final long start = System.nanoTime();
+        int count = 0;
+
+        // start with animations deferred in previous frame
+        final int size = mEntries.size();
+        int index = mNextEntry < size ? mNextEntry : 0;
+        for (int i = 0; i < size && i < mEntries.size(); i++) {
+            if (count > 0 && System.nanoTime() - start > mFrameBudgetNanos) {
+                mDeferredCount += size - i;
+                break;
+            }
+            if (index >= mEntries.size())
+                index = 0;
+
+            Entry entry = mEntries.get(index);
+            final long delta = entry.mLastFrameNanos < 0 ? 0 : (frameTimeNanos - entry.mLastFrameNanos) / 1000000;
+            // keep remainder of milliseconds, so time is not lost between frames
+            entry.mLastFrameNanos = entry.mLastFrameNanos < 0 ? frameTimeNanos : entry.mLastFrameNanos + delta * 1000000;
+            entry.mAnimation.doAnimationFrame(delta);
+            count++;
+            if (index < mEntries.size() && mEntries.get(index) == entry)
+                index++;
+        }
+        mNextEntry = index;
+
+        mLastFrameCostNanos = System.nanoTime() - start;
+        mMaxFrameCostNanos = Math.max(mMaxFrameCostNanos, mLastFrameCostNanos);
+        mLastFrameAnimationCount = count;
+        mFrameCount++;
+
+        if (!mEntries.isEmpty() && !mScheduled) {
+            mChoreographer.postFrameCallback(this);
+            mScheduled = true;
+        }
+    }
+
+    /**
+     * Sets how much time animations may take in one frame. At least one animation is advanced
+     * every frame.
+     *
+     * @param budgetMs time in milliseconds
+     */
+    public void setFrameBudget(float budgetMs) {
+        mFrameBudgetNanos = (long) (budgetMs * 1000000);
+    }
+
+    /**
+     * Returns number of running animations
+     */
+    public int getActiveCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns time spent in animations in last frame
+     */
+    public long getLastFrameCostNanos() {
+        return mLastFrameCostNanos;
+    }
+
+    /**
+     * Returns longest time spent in animations in one frame
+     */
+    public long getMaxFrameCostNanos() {
+        return mMaxFrameCostNanos;
+    }
+
+    /**
+     * Returns number of animations advanced in last frame
+     */
+    public int getLastFrameAnimationCount() {
+        return mLastFrameAnimationCount;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns how many times animation was deferred to next frame because of frame budget
+     */
+    public long getDeferredCount() {
+        return mDeferredCount;
+    }
+
+    public void resetStatistics() {
+        mLastFrameCostNanos = 0;
+        mMaxFrameCostNanos = 0;
+        mLastFrameAnimationCount = 0;
+        mFrameCount = 0;
+        mDeferredCount = 0;
+    }
+
+    private static class Entry {
+        final Animation mAnimation;
+        long mLastFrameNanos = -1;
+
+        Entry(Animation animation) {
+            mAnimation = animation;
+        }
+    }
+}
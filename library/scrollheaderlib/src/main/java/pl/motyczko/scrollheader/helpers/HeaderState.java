@@ -0,0 +1,117 @@
+package pl.motyczko.scrollheader.helpers;
+
+/**
+ * State of collapsing header in current frame. Collapse fraction and everything derived from it
+ * is computed once, when translation or size of header changes, and then read by every effect
+ * drawn in the frame. Updating the state doesn't allocate.
+ */
+public final class HeaderState {
+    private float mTranslationY = Float.NaN;
+    private int mScrollLength;
+    private int mWidth;
+    private int mHeight;
+    private boolean mDirty = true;
+
+    private int mOverlayColorExpanded;
+    private int mOverlayColorCollapsed;
+    private int mIconSize;
+    private int mActionBarIconSize;
+    private int mIconTopOffset;
+
+    private float mFraction;
+    private int mOverlayColor;
+    private float mIconScale = 1.f;
+    private float mIconTranslationX;
+    private float mIconTranslationY;
+    private int mVisibleTop;
+
+    public void setOverlayColors(int expanded, int collapsed) {
+        if (mOverlayColorExpanded == expanded && mOverlayColorCollapsed == collapsed)
+            return;
+        mOverlayColorExpanded = expanded;
+        mOverlayColorCollapsed = collapsed;
+        mDirty = true;
+    }
+
+    /**
+     * @param iconSize size of icon when header is expanded
+     * @param actionBarIconSize size of icon when header is collapsed
+     * @param topOffset top offset of icon when header is collapsed
+     */
+    public void setIconGeometry(int iconSize, int actionBarIconSize, int topOffset) {
+        if (mIconSize == iconSize && mActionBarIconSize == actionBarIconSize && mIconTopOffset == topOffset)
+            return;
+        mIconSize = iconSize;
+        mActionBarIconSize = actionBarIconSize;
+        mIconTopOffset = topOffset;
+        mDirty = true;
+    }
+
+    /**
+     * Recomputes state if translation, size or configuration changed since last update.
+     *
+     * @param translationY current vertical translation of header
+     * @param scrollLength distance by which header can be scrolled
+     * @param width width of header
+     * @param height height of header
+     * @return true if state was recomputed
+     */
+    public boolean update(float translationY, int scrollLength, int width, int height) {
+        if (!mDirty && translationY == mTranslationY && scrollLength == mScrollLength
+                && width == mWidth && height == mHeight)
+            return false;
+
+        mDirty = false;
+        mTranslationY = translationY;
+        mScrollLength = scrollLength;
+        mWidth = width;
+        mHeight = height;
+
+        mVisibleTop = Math.min(height, Math.max(0, (int) -translationY));
+        mFraction = scrollLength > 0 ? Math.abs(translationY / scrollLength) : 0;
+        mOverlayColor = ArgbEvaluator.evaluate(mFraction, mOverlayColorExpanded, mOverlayColorCollapsed);
+        float minSize = mIconSize > 0 ? (float) mActionBarIconSize / (float) mIconSize : 1.f;
+        mIconScale = 1 - (1 - minSize) * mFraction;
+        mIconTranslationX = (1 - mFraction) * (width / 2 - mIconSize / 2);
+        mIconTranslationY = mFraction * mIconTopOffset
+                + (1 - mFraction) * (height / 2 - mIconSize * mIconScale / 2) - translationY;
+        return true;
+    }
+
+    /**
+     * Returns [0,1] collapse fraction, 0 when header is expanded
+     */
+    public float getFraction() {
+        return mFraction;
+    }
+
+    /**
+     * Returns number of rows at the top of header which are moved off-screen by translation
+     */
+    public int getVisibleTop() {
+        return mVisibleTop;
+    }
+
+    /**
+     * Returns true if any row of header is on screen
+     */
+    public boolean isVisible() {
+        return mVisibleTop < mHeight;
+    }
+
+    public int getOverlayColor() {
+        return mOverlayColor;
+    }
+
+    public float getIconScale() {
+        return mIconScale;
+    }
+
+    public float getIconTranslationX() {
+        return mIconTranslationX;
+    }
+
+    public float getIconTranslationY() {
+        return mIconTranslationY;
+    }
+}
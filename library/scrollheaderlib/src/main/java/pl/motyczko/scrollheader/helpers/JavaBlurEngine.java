@@ -0,0 +1,211 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pure Java implementation of {@link BlurEngine}. It does not need RenderScript so it can be used
+ * (and tested) on plain JVM.
+ *
+ * Bitmap is blurred with separable gaussian kernel, the same one ScriptIntrinsicBlur uses
+ * (sigma = 0.4 * radius + 0.6). Horizontal pass is split into bands of rows and vertical pass
+ * into bands of columns, bands are processed in parallel on shared thread pool.
+ */
+public class JavaBlurEngine implements BlurEngine {
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static ExecutorService sExecutor;
+
+    @Override public void blur(Bitmap input, Bitmap output, float radius) {
+        final int width = input.getWidth();
+        final int height = input.getHeight();
+        int[] pixels = new int[width * height];
+        input.getPixels(pixels, 0, width, 0, 0, width, height);
+        blur(pixels, width, height, radius);
+        output.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+
+    @Override public void release() {
+        // thread pool is shared between all engines
+    }
+
+    /**
+     * Blurs ARGB pixel buffer in place.
+     *
+     * @param pixels ARGB pixels, row after row
+     * @param width width of image
+     * @param height height of image
+     * @param radius blur radius in pixels
+     */
+    public void blur(int[] pixels, int width, int height, float radius) {
+        if (radius <= 0.f || width == 0 || height == 0)
+            return;
+
+        final float[] kernel = createKernel(radius);
+        final int[] buffer = new int[width * height];
+        runInBands(new HorizontalPass(pixels, buffer, width, height, kernel), height);
+        runInBands(new VerticalPass(buffer, pixels, width, height, kernel), width);
+    }
+
+    /**
+     * Returns shared thread pool used to process bands.
+     */
+    static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private int mCount = 0;
+
+                @Override public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BlurEngine #" + (++mCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Splits range [0, count) into bands and runs given pass on each of them. Last band is
+     * processed on calling thread. Returns when all bands are done.
+     */
+    static void runInBands(final Pass pass, int count) {
+        final int bandCount = Math.min(THREAD_COUNT, count);
+        if (bandCount <= 1) {
+            pass.run(0, count);
+            return;
+        }
+
+        final int bandSize = (count + bandCount - 1) / bandCount;
+        final CountDownLatch latch = new CountDownLatch(bandCount - 1);
+        ExecutorService executor = getExecutor();
+        int start = 0;
+        for (int i = 0; i < bandCount - 1; i++) {
+            final int from = start;
+            final int to = Math.min(count, start + bandSize);
+            executor.execute(new Runnable() {
+                @Override public void run() {
+                    try {
+                        pass.run(from, to);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            start = to;
+        }
+        pass.run(start, count);
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static float[] createKernel(float radius) {
+        final int size = (int) Math.ceil(radius);
+        final float sigma = 0.4f * radius + 0.6f;
+        final float coefficient = -1.f / (2.f * sigma * sigma);
+        float[] kernel = new float[2 * size + 1];
+        float sum = 0.f;
+        for (int i = -size; i <= size; i++) {
+            float value = (float) Math.exp(i * i * coefficient);
+            kernel[i + size] = value;
+            sum += value;
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+
+    private static int pack(float a, float r, float g, float b) {
+        return ((int) (a + 0.5f) << 24) | ((int) (r + 0.5f) << 16) | ((int) (g + 0.5f) << 8) | (int) (b + 0.5f);
+    }
+
+    /**
+     * Part of blur which can be processed in bands.
+     */
+    interface Pass {
+        public void run(int from, int to);
+    }
+
+    private static class HorizontalPass implements Pass {
+        private final int[] mInput;
+        private final int[] mOutput;
+        private final int mWidth;
+        private final int mHeight;
+        private final float[] mKernel;
+
+        HorizontalPass(int[] input, int[] output, int width, int height, float[] kernel) {
+            mInput = input;
+            mOutput = output;
+            mWidth = width;
+            mHeight = height;
+            mKernel = kernel;
+        }
+
+        @Override public void run(int from, int to) {
+            final int size = mKernel.length / 2;
+            final int lastX = mWidth - 1;
+            for (int y = from; y < to; y++) {
+                final int row = y * mWidth;
+                for (int x = 0; x < mWidth; x++) {
+                    float a = 0, r = 0, g = 0, b = 0;
+                    for (int k = -size; k <= size; k++) {
+                        int sx = x + k;
+                        sx = sx < 0 ? 0 : (sx > lastX ? lastX : sx);
+                        final int color = mInput[row + sx];
+                        final float weight = mKernel[k + size];
+                        a += weight * (color >>> 24);
+                        r += weight * ((color >> 16) & 0xff);
+                        g += weight * ((color >> 8) & 0xff);
+                        b += weight * (color & 0xff);
+                    }
+                    mOutput[row + x] = pack(a, r, g, b);
+                }
+            }
+        }
+    }
+
+    private static class VerticalPass implements Pass {
+        private final int[] mInput;
+        private final int[] mOutput;
+        private final int mWidth;
+        private final int mHeight;
+        private final float[] mKernel;
+
+        VerticalPass(int[] input, int[] output, int width, int height, float[] kernel) {
+            mInput = input;
+            mOutput = output;
+            mWidth = width;
+            mHeight = height;
+            mKernel = kernel;
+        }
+
+        @Override public void run(int from, int to) {
+            final int size = mKernel.length / 2;
+            final int lastY = mHeight - 1;
+            for (int x = from; x < to; x++) {
+                for (int y = 0; y < mHeight; y++) {
+                    float a = 0, r = 0, g = 0, b = 0;
+                    for (int k = -size; k <= size; k++) {
+                        int sy = y + k;
+                        sy = sy < 0 ? 0 : (sy > lastY ? lastY : sy);
+                        final int color = mInput[sy * mWidth + x];
+                        final float weight = mKernel[k + size];
+                        a += weight * (color >>> 24);
+                        r += weight * ((color >> 16) & 0xff);
+                        g += weight * ((color >> 8) & 0xff);
+                        b += weight * (color & 0xff);
+                    }
+                    mOutput[y * mWidth + x] = pack(a, r, g, b);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pl.motyczko.scrollheader.helpers;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Precomputed table of Ken Burns segments. Table is generated from seed, so the same seed always
+ * gives the same motion, eg. in benchmarks.
+ *
+ * Every segment is stored as {@link #STRIDE} floats in one primitive array. Scale and translation
+ * are normalized, so table doesn't depend on image and view sizes:
+ * <ul>
+ *     <li>scale 0 means image just covers bounds, 1 means maximum zoom</li>
+ *     <li>translation 0 means image aligned to left/top edge, 1 to right/bottom edge</li>
+ * </ul>
+ */
+public final class KenBurnsPath {
+    public static final int SCALE_FROM = 0;
+    public static final int SCALE_TO = 1;
+    public static final int TRANSLATION_X_FROM = 2;
+    public static final int TRANSLATION_X_TO = 3;
+    public static final int TRANSLATION_Y_FROM = 4;
+    public static final int TRANSLATION_Y_TO = 5;
+    /**
+     * Duration of pan in milliseconds
+     */
+    public static final int PAN_DURATION = 6;
+    /**
+     * Duration of crossfade to next segment in milliseconds
+     */
+    public static final int FADE_DURATION = 7;
+    public static final int STRIDE = 8;
+
+    private final long mSeed;
+    private final float[] mTable;
+
+    /**
+     * Plans given number of segments.
+     *
+     * @param seed seed of random generator
+     * @param segmentCount number of segments, they are repeated in a loop
+     * @param panDurationMs duration of pan of every segment
+     * @param fadeDurationMs duration of crossfade between segments
+     */
+    public static KenBurnsPath plan(long seed, int segmentCount, long panDurationMs, long fadeDurationMs) {
+        if (segmentCount <= 0)
+            throw new IllegalArgumentException("segmentCount must be positive");
+
+        Random random = new Random(seed);
+        float[] table = new float[segmentCount * STRIDE];
+        for (int i = 0; i < segmentCount; i++) {
+            final int offset = i * STRIDE;
+            table[offset + SCALE_FROM] = random.nextFloat();
+            table[offset + SCALE_TO] = random.nextFloat();
+            table[offset + TRANSLATION_X_FROM] = random.nextFloat();
+            table[offset + TRANSLATION_Y_FROM] = random.nextFloat();
+            table[offset + TRANSLATION_X_TO] = random.nextFloat();
+            table[offset + TRANSLATION_Y_TO] = random.nextFloat();
+            table[offset + PAN_DURATION] = panDurationMs;
+            table[offset + FADE_DURATION] = fadeDurationMs;
+        }
+        return new KenBurnsPath(seed, table);
+    }
+
+    private KenBurnsPath(long seed, float[] table) {
+        mSeed = seed;
+        mTable = table;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int getSegmentCount() {
+        return mTable.length / STRIDE;
+    }
+
+    /**
+     * Returns value of segment, eg. get(3, SCALE_FROM)
+     */
+    public float get(int segment, int field) {
+        return mTable[segment * STRIDE + field];
+    }
+
+    /**
+     * Returns copy of whole table, segment after segment.
+     */
+    public float[] getTable() {
+        return Arrays.copyOf(mTable, mTable.length);
+    }
+}
@@ -0,0 +1,244 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Optional disk cache of raw bitmap pixels, eg. blur levels and framed avatars. Entries are
+ * stored as small header followed by pixels in the same layout as
+ * {@link Bitmap#copyPixelsToBuffer(java.nio.Buffer)}, files are written and read through memory
+ * mapping. Cache is bounded by total size of files and evicts least recently used entries.
+ *
+ * Cache is disabled until {@link #install(Context, long)} is called.
+ */
+public class PixelDiskCache {
+    private static final String LOG_TAG = "PixelDiskCache";
+    private static final String DIRECTORY_NAME = "scrollheader";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x53485058;
+    private static final int HEADER_SIZE = 12;
+
+    private static PixelDiskCache sInstance;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Enables process wide disk cache located in application cache directory.
+     *
+     * @param maxSize maximum number of bytes used by cache files
+     */
+    public static synchronized PixelDiskCache install(Context context, long maxSize) {
+        if (sInstance == null)
+            sInstance = new PixelDiskCache(new File(context.getCacheDir(), DIRECTORY_NAME), maxSize);
+        return sInstance;
+    }
+
+    /**
+     * Returns installed cache or null if disk cache is not enabled.
+     */
+    public static synchronized PixelDiskCache getInstance() {
+        return sInstance;
+    }
+
+    public PixelDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        if (!mDirectory.exists() && !mDirectory.mkdirs())
+            Log.w(LOG_TAG, "Cannot create cache directory " + mDirectory);
+
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            mEntries.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Returns bitmap stored under given key or null if there is no such entry.
+     */
+    public synchronized Bitmap get(String key) {
+        if (mEntries.get(key) == null)
+            return null;
+
+        File file = new File(mDirectory, key);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Invalid cache entry " + key);
+
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(buffer);
+            file.setLastModified(System.currentTimeMillis());
+            return bitmap;
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Cannot read cache entry " + key, e);
+            remove(key);
+            return null;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Stores ARGB_8888 bitmap under given key.
+     */
+    public synchronized void put(String key, Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888)
+            return;
+
+        final long size = HEADER_SIZE + (long) bitmap.getRowBytes() * bitmap.getHeight();
+        if (size > mMaxSize)
+            return;
+
+        File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(temp, "rw");
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(bitmap.getWidth());
+            buffer.putInt(bitmap.getHeight());
+            bitmap.copyPixelsToBuffer(buffer);
+            buffer.force();
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Cannot write cache entry " + key, e);
+            temp.delete();
+            return;
+        } finally {
+            closeQuietly(raf);
+        }
+
+        remove(key);
+        if (!temp.renameTo(new File(mDirectory, key))) {
+            temp.delete();
+            return;
+        }
+        mEntries.put(key, size);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    public synchronized void remove(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null)
+            mSize -= size;
+        new File(mDirectory, key).delete();
+    }
+
+    /**
+     * Removes least recently used entries until total size is not bigger than given size.
+     */
+    public synchronized void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mSize > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            new File(mDirectory, entry.getKey()).delete();
+            mSize -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns hash of bitmap content, which can be used as part of cache key.
+     */
+    public static String hash(Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        int[] row = new int[width];
+        ByteBuffer rowBytes = ByteBuffer.allocate(width * 4);
+        IntBuffer rowInts = rowBytes.asIntBuffer();
+
+        MessageDigest digest = createDigest();
+        digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            rowInts.clear();
+            rowInts.put(row);
+            digest.update(rowBytes.array());
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates cache key from source hash and parameters used to compute cached bitmap.
+     */
+    public static String createKey(String sourceHash, Object... params) {
+        StringBuilder builder = new StringBuilder(sourceHash);
+        for (Object param : params)
+            builder.append('_').append(param);
+        return toHex(createDigest().digest(builder.toString().getBytes()));
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null)
+            return;
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
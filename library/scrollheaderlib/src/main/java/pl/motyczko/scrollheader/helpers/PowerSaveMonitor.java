@@ -0,0 +1,48 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Tracks battery saver state, so animations can lower their frame rate. Battery saver exists
+ * since Lollipop, on older versions power save mode is never reported.
+ */
+public final class PowerSaveMonitor extends BroadcastReceiver {
+    private static PowerSaveMonitor sInstance;
+
+    private final PowerManager mPowerManager;
+    private volatile boolean mPowerSaveMode;
+
+    /**
+     * Starts tracking battery saver state. Safe to call many times.
+     */
+    public static synchronized void install(Context context) {
+        if (sInstance != null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+            return;
+        sInstance = new PowerSaveMonitor(context.getApplicationContext());
+    }
+
+    /**
+     * Returns true if battery saver is on. Returns false if monitor is not installed.
+     */
+    public static synchronized boolean isPowerSaveMode() {
+        return sInstance != null && sInstance.mPowerSaveMode;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private PowerSaveMonitor(Context context) {
+        mPowerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        mPowerSaveMode = mPowerManager.isPowerSaveMode();
+        context.registerReceiver(this, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override public void onReceive(Context context, Intent intent) {
+        mPowerSaveMode = mPowerManager.isPowerSaveMode();
+    }
+}
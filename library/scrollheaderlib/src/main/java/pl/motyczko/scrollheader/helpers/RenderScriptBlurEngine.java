@@ -0,0 +1,36 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * {@link BlurEngine} backed by support library ScriptIntrinsicBlur. RenderScript context and
+ * script are shared between engines through {@link RenderScriptPool}.
+ */
+public class RenderScriptBlurEngine implements BlurEngine {
+    /**
+     * Maximum radius supported by ScriptIntrinsicBlur
+     */
+    public static final float MAX_RADIUS = 25.f;
+
+    private RenderScriptPool mPool;
+
+    /**
+     * Acquires shared RenderScript context.
+     *
+     * @throws android.support.v8.renderscript.RSRuntimeException if RenderScript is not available
+     */
+    public RenderScriptBlurEngine(Context context) {
+        mPool = RenderScriptPool.acquire(context);
+    }
+
+    @Override public void blur(Bitmap input, Bitmap output, float radius) {
+        mPool.blur(input, output, Math.min(radius, MAX_RADIUS));
+    }
+
+    @Override public void release() {
+        if (mPool != null)
+            mPool.release();
+        mPool = null;
+    }
+}
@@ -0,0 +1,161 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.ScriptIntrinsicBlur;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Library wide, reference counted holder of RenderScript context and blur script. Context is
+ * created on first {@link #acquire(Context)} and destroyed shortly after last {@link #release()},
+ * so drawables created one after another (eg. on rotation) share the same context.
+ *
+ * Allocations are kept for a few most recently used bitmap sizes and reused when size matches.
+ */
+public final class RenderScriptPool {
+    /**
+     * How long context is kept alive after last reference is released
+     */
+    private static final long KEEP_ALIVE_MS = 5000;
+    /**
+     * Number of bitmap sizes for which allocations are kept
+     */
+    private static final int MAX_ALLOCATION_SIZES = 2;
+
+    private static RenderScriptPool sInstance;
+
+    private static int sContextCreateCount;
+    private static int sAllocationCreateCount;
+    private static int sAllocationReuseCount;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mDestroyRunnable = new Runnable() {
+        @Override public void run() {
+            destroyIfUnused(RenderScriptPool.this);
+        }
+    };
+
+    private final RenderScript mRenderScript;
+    private final ScriptIntrinsicBlur mIntrinsicBlur;
+    private final LinkedHashMap<Long, Allocation[]> mAllocations = new LinkedHashMap<Long, Allocation[]>(4, 0.75f, true);
+    private int mReferenceCount;
+
+    /**
+     * Returns shared pool and increments its reference count. Every call must be paired with
+     * {@link #release()}.
+     *
+     * @throws android.support.v8.renderscript.RSRuntimeException if RenderScript is not available
+     */
+    public static synchronized RenderScriptPool acquire(Context context) {
+        if (sInstance == null) {
+            sInstance = new RenderScriptPool(context.getApplicationContext());
+            sContextCreateCount++;
+        }
+        sInstance.mReferenceCount++;
+        sInstance.mHandler.removeCallbacks(sInstance.mDestroyRunnable);
+        return sInstance;
+    }
+
+    private RenderScriptPool(Context context) {
+        mRenderScript = RenderScript.create(context);
+        mIntrinsicBlur = ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
+    }
+
+    /**
+     * Decrements reference count. When it drops to zero context is destroyed after a short delay
+     * unless it is acquired again.
+     */
+    public void release() {
+        synchronized (RenderScriptPool.class) {
+            if (mReferenceCount == 0)
+                return;
+            mReferenceCount--;
+            if (mReferenceCount == 0)
+                mHandler.postDelayed(mDestroyRunnable, KEEP_ALIVE_MS);
+        }
+    }
+
+    /**
+     * Blurs input bitmap into output bitmap. Both bitmaps must have the same size.
+     */
+    public void blur(Bitmap input, Bitmap output, float radius) {
+        synchronized (RenderScriptPool.class) {
+            Allocation[] allocations = obtainAllocations(input);
+            allocations[0].copyFrom(input);
+            mIntrinsicBlur.setInput(allocations[0]);
+            mIntrinsicBlur.setRadius(radius);
+            mIntrinsicBlur.forEach(allocations[1]);
+            allocations[1].copyTo(output);
+        }
+    }
+
+    private Allocation[] obtainAllocations(Bitmap bitmap) {
+        final Long key = ((long) bitmap.getWidth() << 32) | bitmap.getHeight();
+        Allocation[] allocations = mAllocations.get(key);
+        if (allocations != null) {
+            sAllocationReuseCount++;
+            return allocations;
+        }
+
+        allocations = new Allocation[]{
+                Allocation.createFromBitmap(mRenderScript, bitmap, Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT),
+                Allocation.createFromBitmap(mRenderScript, bitmap, Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT)
+        };
+        sAllocationCreateCount++;
+        mAllocations.put(key, allocations);
+
+        if (mAllocations.size() > MAX_ALLOCATION_SIZES) {
+            Iterator<Map.Entry<Long, Allocation[]>> it = mAllocations.entrySet().iterator();
+            destroyAllocations(it.next().getValue());
+            it.remove();
+        }
+        return allocations;
+    }
+
+    private static void destroyAllocations(Allocation[] allocations) {
+        for (Allocation allocation : allocations)
+            allocation.destroy();
+    }
+
+    private static synchronized void destroyIfUnused(RenderScriptPool pool) {
+        if (pool.mReferenceCount != 0)
+            return;
+
+        for (Allocation[] allocations : pool.mAllocations.values())
+            destroyAllocations(allocations);
+        pool.mAllocations.clear();
+        pool.mIntrinsicBlur.destroy();
+        pool.mRenderScript.destroy();
+        if (sInstance == pool)
+            sInstance = null;
+    }
+
+    /**
+     * Returns how many times RenderScript context was created
+     */
+    public static synchronized int getContextCreateCount() {
+        return sContextCreateCount;
+    }
+
+    /**
+     * Returns how many times input/output allocation pair was created
+     */
+    public static synchronized int getAllocationCreateCount() {
+        return sAllocationCreateCount;
+    }
+
+    /**
+     * Returns how many times input/output allocation pair was reused
+     */
+    public static synchronized int getAllocationReuseCount() {
+        return sAllocationReuseCount;
+    }
+}
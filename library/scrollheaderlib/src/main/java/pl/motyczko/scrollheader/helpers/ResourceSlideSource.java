@@ -0,0 +1,48 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * {@link SlideSource} decoding drawable resources with inSampleSize, so decoded bitmaps are not
+ * much bigger than requested size.
+ */
+public class ResourceSlideSource implements SlideSource {
+    private final Resources mResources;
+    private final int[] mResIds;
+
+    public ResourceSlideSource(Resources resources, int... resIds) {
+        mResources = resources;
+        mResIds = resIds;
+    }
+
+    @Override public int getCount() {
+        return mResIds.length;
+    }
+
+    @Override public Bitmap decode(int position, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(mResources, mResIds[position], options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeResource(mResources, mResIds[position], options);
+    }
+
+    /**
+     * Returns largest power of two sample size which keeps decoded image at least as big as
+     * requested size.
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (width <= 0 || height <= 0 || reqWidth <= 0 || reqHeight <= 0)
+            return inSampleSize;
+
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight)
+            inSampleSize *= 2;
+        return inSampleSize;
+    }
+}
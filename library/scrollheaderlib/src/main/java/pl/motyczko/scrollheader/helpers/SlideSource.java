@@ -0,0 +1,24 @@
+package pl.motyczko.scrollheader.helpers;
+
+import android.graphics.Bitmap;
+
+/**
+ * Source of Ken Burns slides. Slides are decoded one by one when they are about to be shown, so
+ * only a couple of them are kept in memory at once.
+ */
+public interface SlideSource {
+    /**
+     * Returns number of slides.
+     */
+    public int getCount();
+
+    /**
+     * Decodes slide at given position. Called on background thread. Returned bitmap is owned and
+     * recycled by caller.
+     *
+     * @param reqWidth minimum width of decoded bitmap, source can be downsampled to this size
+     * @param reqHeight minimum height of decoded bitmap, source can be downsampled to this size
+     * @return decoded bitmap or null if slide cannot be decoded
+     */
+    public Bitmap decode(int position, int reqWidth, int reqHeight);
+}